@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import org.apache.commons.io.FileUtils;
+import se.trixon.toolbox.api.TbDateSource;
+import se.trixon.toolbox.api.TbNameCase;
+
+/**
+ * Generated on-disk tree of JPEG files shared by the benchmarks.
+ * <p>
+ * Every file carries an Exif DateTimeOriginal and a matching modification
+ * date spread over a few years, padded with random bytes to the requested
+ * size. The tree is created below {@code java.io.tmpdir}.
+ *
+ * @author Patrik Karlström
+ */
+public class BenchmarkFixture {
+
+    private static final int FILES_PER_DIR = 250;
+    private static final long START_TIME = 1262304000000L;
+    private static final long TIME_SPAN = 10L * 365 * 24 * 60 * 60 * 1000;
+
+    private final List<FileRecord> mFileRecords = new ArrayList<>();
+    private final Path mRoot;
+    private final Path mSourceDir;
+
+    public BenchmarkFixture(int files, int fileSize) throws IOException {
+        mRoot = Files.createTempDirectory("filebydate-bench");
+        mSourceDir = mRoot.resolve("source");
+
+        Random random = new Random(files);
+        SimpleDateFormat exifFormat = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss");
+        exifFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        for (int i = 0; i < files; i++) {
+            Path dir = mSourceDir.resolve(String.format("dir%04d", i / FILES_PER_DIR));
+            Files.createDirectories(dir);
+
+            Path path = dir.resolve(String.format(i % 2 == 0 ? "IMG_%06d.JPG" : "img_%06d.jpg", i));
+            long time = START_TIME + (long) (random.nextDouble() * TIME_SPAN) / 1000 * 1000;
+            Files.write(path, createJpeg(exifFormat.format(new Date(time)), fileSize, random));
+            Files.setLastModifiedTime(path, FileTime.fromMillis(time));
+
+            mFileRecords.add(DirectoryScanner.getFileRecord(path.toFile()));
+        }
+    }
+
+    public static Profile createProfile(File sourceDir, File destDir) {
+        Profile profile = new Profile();
+        profile.setSourceDir(sourceDir);
+        profile.setDestDir(destDir);
+        profile.setFilePattern("*");
+        profile.setDatePattern("yyyy/MM");
+        profile.setDateSource(TbDateSource.FILE_MODIFIED);
+        profile.setCaseBase(TbNameCase.UNCHANGED);
+        profile.setCaseExt(TbNameCase.UNCHANGED);
+        profile.setRecursive(true);
+        profile.setDryRun(true);
+        profile.isValid();
+
+        return profile;
+    }
+
+    public void delete() throws IOException {
+        FileUtils.deleteDirectory(mRoot.toFile());
+    }
+
+    public List<FileRecord> getFileRecords() {
+        return mFileRecords;
+    }
+
+    public Path getRoot() {
+        return mRoot;
+    }
+
+    public Path getSourceDir() {
+        return mSourceDir;
+    }
+
+    /**
+     * Minimal JPEG: SOI, an Exif APP1 segment with IFD0 pointing to an Exif
+     * SubIFD holding DateTimeOriginal, random scan data and EOI.
+     */
+    private byte[] createJpeg(String dateTimeOriginal, int fileSize, Random random) {
+        ByteBuffer tiff = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1).putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(26).putInt(0);
+        tiff.putShort((short) 1).putShort((short) 0x9003).putShort((short) 2).putInt(20).putInt(44).putInt(0);
+        tiff.put(dateTimeOriginal.getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+
+        int headerSize = 2 + 4 + 6 + tiff.capacity();
+        ByteBuffer jpeg = ByteBuffer.allocate(Math.max(fileSize, headerSize + 2)).order(ByteOrder.BIG_ENDIAN);
+        jpeg.putShort((short) 0xFFD8);
+        jpeg.putShort((short) 0xFFE1).putShort((short) (2 + 6 + tiff.capacity()));
+        jpeg.put("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        jpeg.put(tiff.array());
+
+        byte[] scanData = new byte[jpeg.remaining() - 2];
+        random.nextBytes(scanData);
+        jpeg.put(scanData);
+        jpeg.putShort((short) 0xFFD9);
+
+        return jpeg.array();
+    }
+
+    /**
+     * Swallows all events.
+     */
+    public static class NullListener implements OperationListener {
+
+        @Override
+        public void onOperationError(String message) {
+        }
+
+        @Override
+        public void onOperationFailed(String message) {
+        }
+
+        @Override
+        public void onOperationFinished(String message, int fileCount) {
+        }
+
+        @Override
+        public void onOperationInterrupted() {
+        }
+
+        @Override
+        public void onOperationLog(String message) {
+        }
+
+        @Override
+        public void onOperationProcessingStarted() {
+        }
+
+        @Override
+        public void onOperationProgress(int value, int max) {
+        }
+
+        @Override
+        public void onOperationStarted() {
+        }
+    }
+}
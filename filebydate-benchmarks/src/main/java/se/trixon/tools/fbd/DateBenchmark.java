@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import com.drew.imaging.ImageProcessingException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import se.trixon.toolbox.api.TbDateSource;
+
+/**
+ * Resolves the date of every fixture file through {@link Operation#getDate}
+ * for each {@link TbDateSource}.
+ * <p>
+ * The Exif date cache is cleared before every invocation, so
+ * {@code EXIF_ORIGINAL} measures reading the files and not the cache hits.
+ *
+ * @author Patrik Karlström
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DateBenchmark {
+
+    @Param({"FILE_CREATED", "FILE_MODIFIED", "EXIF_ORIGINAL"})
+    public TbDateSource dateSource;
+    @Param({"1000"})
+    public int files;
+
+    private BenchmarkFixture mFixture;
+    private Operation mOperation;
+
+    @Benchmark
+    public void getDate(Blackhole blackhole) throws IOException, ImageProcessingException {
+        for (FileRecord fileRecord : mFixture.getFileRecords()) {
+            blackhole.consume(mOperation.getDate(fileRecord));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        ExifDateCache.getInstance().clear();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        mFixture = new BenchmarkFixture(files, 16 * 1024);
+        Profile profile = BenchmarkFixture.createProfile(mFixture.getSourceDir().toFile(), mFixture.getRoot().toFile());
+        profile.setDateSource(dateSource);
+        mOperation = new Operation(new BenchmarkFixture.NullListener(), profile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mFixture.delete();
+    }
+}
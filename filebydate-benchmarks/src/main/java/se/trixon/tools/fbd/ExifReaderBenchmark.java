@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads the Exif date of every fixture file straight from
+ * {@link ExifDateReader}, bypassing the Exif date cache.
+ *
+ * @author Patrik Karlström
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ExifReaderBenchmark {
+
+    @Param({"1000"})
+    public int files;
+
+    private BenchmarkFixture mFixture;
+
+    @Benchmark
+    public void read(Blackhole blackhole) throws IOException {
+        for (FileRecord fileRecord : mFixture.getFileRecords()) {
+            blackhole.consume(ExifDateReader.read(fileRecord.getFile()));
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        mFixture = new BenchmarkFixture(files, 16 * 1024);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mFixture.delete();
+    }
+}
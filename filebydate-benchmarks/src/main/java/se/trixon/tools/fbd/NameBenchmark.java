@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import se.trixon.toolbox.api.TbNameCase;
+
+/**
+ * Builds destination file names with {@link Operation#getDestFilename} for
+ * each combination of {@link TbNameCase}. Only names are involved, no files
+ * are touched.
+ *
+ * @author Patrik Karlström
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class NameBenchmark {
+
+    @Param({"UNCHANGED", "LOWER", "UPPER"})
+    public TbNameCase caseBase;
+    @Param({"UNCHANGED", "LOWER", "UPPER"})
+    public TbNameCase caseExt;
+    @Param({"1000"})
+    public int files;
+
+    private final List<File> mFiles = new ArrayList<>();
+    private Operation mOperation;
+
+    @Benchmark
+    public void getDestFilename(Blackhole blackhole) {
+        for (File file : mFiles) {
+            blackhole.consume(mOperation.getDestFilename(file));
+        }
+    }
+
+    @Setup
+    public void setup() {
+        File dir = new File(System.getProperty("java.io.tmpdir"));
+        for (int i = 0; i < files; i++) {
+            mFiles.add(new File(dir, String.format(i % 2 == 0 ? "IMG_%06d.JPG" : "Holiday Photo %06d.jpeg", i)));
+        }
+
+        Profile profile = BenchmarkFixture.createProfile(dir, dir);
+        profile.setCaseBase(caseBase);
+        profile.setCaseExt(caseExt);
+        mOperation = new Operation(new BenchmarkFixture.NullListener(), profile);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Scans the fixture tree with {@link DirectoryScanner}, one full tree per
+ * invocation.
+ *
+ * @author Patrik Karlström
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ScanBenchmark {
+
+    @Param({"1000"})
+    public int files;
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private BenchmarkFixture mFixture;
+    private DirectoryScanner mScanner;
+
+    @Setup
+    public void setup() throws IOException {
+        mFixture = new BenchmarkFixture(files, 4096);
+        Profile profile = BenchmarkFixture.createProfile(mFixture.getSourceDir().toFile(), mFixture.getRoot().toFile());
+        Operation operation = new Operation(new BenchmarkFixture.NullListener(), profile);
+        mScanner = new DirectoryScanner(profile.getPathMatcher(), false, true, parallelism, operation);
+    }
+
+    @Benchmark
+    public boolean scan(Blackhole blackhole) {
+        return mScanner.scan(mFixture.getSourceDir(), blackhole::consume);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mFixture.delete();
+    }
+}
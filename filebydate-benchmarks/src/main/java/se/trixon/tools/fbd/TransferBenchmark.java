@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Copies and moves the fixture files with {@link FileTransfer}, one full tree
+ * per invocation.
+ * <p>
+ * Copies overwrite the same destination files every time. Moves go back and
+ * forth between the source and the destination directory, within one file
+ * store that is a rename.
+ *
+ * @author Patrik Karlström
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TransferBenchmark {
+
+    @Param({"65536"})
+    public int fileSize;
+    @Param({"1000"})
+    public int files;
+
+    private final List<File> mDestFiles = new ArrayList<>();
+    private List<FileRecord> mDestRecords = new ArrayList<>();
+    private final FileTransfer mFileTransfer = new FileTransfer();
+    private BenchmarkFixture mFixture;
+    private List<FileRecord> mSourceRecords;
+
+    @Benchmark
+    public void copy() throws IOException {
+        for (int i = 0; i < mSourceRecords.size(); i++) {
+            mFileTransfer.copy(mSourceRecords.get(i), mDestFiles.get(i));
+        }
+    }
+
+    @Benchmark
+    public void move() throws IOException {
+        for (int i = 0; i < mSourceRecords.size(); i++) {
+            mFileTransfer.move(mSourceRecords.get(i), mDestRecords.get(i).getFile());
+        }
+
+        List<FileRecord> records = mSourceRecords;
+        mSourceRecords = mDestRecords;
+        mDestRecords = records;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        mFixture = new BenchmarkFixture(files, fileSize);
+        mSourceRecords = new ArrayList<>(mFixture.getFileRecords());
+
+        Path destDir = Files.createDirectories(mFixture.getRoot().resolve("dest"));
+        for (FileRecord sourceRecord : mSourceRecords) {
+            File destFile = destDir.resolve(sourceRecord.getFile().getName()).toFile();
+            mDestFiles.add(destFile);
+            mDestRecords.add(new FileRecord(destFile, sourceRecord.getSize(), sourceRecord.getLastModified(), sourceRecord.getCreated()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mFixture.delete();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An {@link OperationListener} that receives log messages in batches, see
+ * {@link BatchingOperationListener}.
+ *
+ * @author Patrik Karlström
+ */
+public interface BatchOperationListener extends OperationListener {
+
+    @Override
+    default void onOperationLog(String message) {
+        onOperationLog(Collections.singletonList(message));
+    }
+
+    /**
+     * @param messages the messages logged since the previous batch, in order
+     */
+    void onOperationLog(List<String> messages);
+}
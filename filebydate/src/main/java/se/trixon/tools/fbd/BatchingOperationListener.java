@@ -0,0 +1,255 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decouples an operation from a slow {@link OperationListener}.
+ * <p>
+ * Log messages are collected in a ring buffer and handed on in batches, when
+ * {@link #BATCH_SIZE} messages are pending or every {@link #FLUSH_INTERVAL}
+ * ms. Progress and metrics are throttled to the same interval and only the
+ * latest value is reported. All other events flush the pending messages and
+ * are forwarded in order. The delegate is never called concurrently.
+ * <p>
+ * The flusher thread starts with {@link #onOperationStarted()} and stops with
+ * {@link #close()}.
+ *
+ * @author Patrik Karlström
+ */
+public class BatchingOperationListener implements OperationListener, AutoCloseable {
+
+    public static final int BATCH_SIZE = 512;
+    public static final long FLUSH_INTERVAL = 100;
+    private static final int CAPACITY = 8192;
+
+    private final String[] mBuffer = new String[CAPACITY];
+    private boolean mClosed;
+    private final OperationListener mDelegate;
+    private final Object mDeliveryLock = new Object();
+    private int mHead;
+    private final ReentrantLock mLock = new ReentrantLock();
+    private OperationMetrics mMetrics;
+    private final Condition mNotEmpty = mLock.newCondition();
+    private int mProgressMax;
+    private boolean mProgressPending;
+    private int mProgressValue;
+    private int mSize;
+    private final Thread mThread;
+
+    public BatchingOperationListener(OperationListener delegate) {
+        mDelegate = delegate;
+        mThread = new Thread(this::run, "FileByDate-events");
+        mThread.setDaemon(true);
+    }
+
+    /**
+     * Flushes the pending events and stops the flusher thread.
+     */
+    @Override
+    public void close() {
+        mLock.lock();
+        try {
+            mClosed = true;
+            mNotEmpty.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+
+        flush();
+    }
+
+    public void flush() {
+        List<String> messages = null;
+        int progressValue = 0;
+        int progressMax = 0;
+        boolean progress;
+        OperationMetrics metrics;
+
+        synchronized (mDeliveryLock) {
+            mLock.lock();
+            try {
+                if (mSize > 0) {
+                    messages = new ArrayList<>(mSize);
+                    while (mSize > 0) {
+                        messages.add(mBuffer[mHead]);
+                        mBuffer[mHead] = null;
+                        mHead = (mHead + 1) % CAPACITY;
+                        mSize--;
+                    }
+                }
+                progress = mProgressPending;
+                progressValue = mProgressValue;
+                progressMax = mProgressMax;
+                mProgressPending = false;
+                metrics = mMetrics;
+                mMetrics = null;
+            } finally {
+                mLock.unlock();
+            }
+
+            if (messages != null) {
+                if (mDelegate instanceof BatchOperationListener) {
+                    ((BatchOperationListener) mDelegate).onOperationLog(messages);
+                } else {
+                    messages.forEach(mDelegate::onOperationLog);
+                }
+            }
+
+            if (progress) {
+                mDelegate.onOperationProgress(progressValue, progressMax);
+            }
+
+            if (metrics != null) {
+                mDelegate.onOperationMetrics(metrics);
+            }
+        }
+    }
+
+    @Override
+    public void onOperationError(String message) {
+        flush();
+        synchronized (mDeliveryLock) {
+            mDelegate.onOperationError(message);
+        }
+    }
+
+    @Override
+    public void onOperationFailed(String message) {
+        flush();
+        synchronized (mDeliveryLock) {
+            mDelegate.onOperationFailed(message);
+        }
+    }
+
+    @Override
+    public void onOperationFinished(String message, int fileCount) {
+        flush();
+        synchronized (mDeliveryLock) {
+            mDelegate.onOperationFinished(message, fileCount);
+        }
+    }
+
+    @Override
+    public void onOperationInterrupted() {
+        flush();
+        synchronized (mDeliveryLock) {
+            mDelegate.onOperationInterrupted();
+        }
+    }
+
+    /**
+     * Queues message, a producer that finds the buffer full delivers the
+     * pending messages itself before it tries again.
+     *
+     * @param message
+     */
+    @Override
+    public void onOperationLog(String message) {
+        while (!offer(message)) {
+            flush();
+        }
+    }
+
+    @Override
+    public void onOperationMetrics(OperationMetrics metrics) {
+        mLock.lock();
+        try {
+            mMetrics = metrics;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public void onOperationProcessingStarted() {
+        flush();
+        synchronized (mDeliveryLock) {
+            mDelegate.onOperationProcessingStarted();
+        }
+    }
+
+    @Override
+    public void onOperationProgress(int value, int max) {
+        mLock.lock();
+        try {
+            mProgressValue = value;
+            mProgressMax = max;
+            mProgressPending = true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public void onOperationStarted() {
+        if (mThread.getState() == Thread.State.NEW) {
+            mThread.start();
+        }
+
+        flush();
+        synchronized (mDeliveryLock) {
+            mDelegate.onOperationStarted();
+        }
+    }
+
+    /**
+     * @return false if the buffer is full and message was not queued
+     */
+    private boolean offer(String message) {
+        mLock.lock();
+        try {
+            if (mSize == CAPACITY) {
+                return false;
+            }
+
+            mBuffer[(mHead + mSize) % CAPACITY] = message;
+            mSize++;
+            if (mSize == BATCH_SIZE) {
+                mNotEmpty.signal();
+            }
+
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            mLock.lock();
+            try {
+                if (mClosed) {
+                    return;
+                }
+                if (mSize < BATCH_SIZE) {
+                    mNotEmpty.await(FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } finally {
+                mLock.unlock();
+            }
+
+            flush();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The SHA-256 digests of the files verified during a run, written to one
+ * manifest per date folder and run.
+ * <p>
+ * The manifest is placed beside its date folder, named after the folder and
+ * the start of the run, in the format of {@code sha256sum} so it can be
+ * checked with {@code sha256sum -c} from the folder holding it. At most
+ * {@link #MAX_OPEN_WRITERS} manifests are open at a time.
+ *
+ * @author Patrik Karlström
+ */
+public class ChecksumManifest implements AutoCloseable {
+
+    public static final String ALGORITHM = "SHA-256";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final Logger LOGGER = Logger.getLogger(ChecksumManifest.class.getName());
+    private static final int MAX_OPEN_WRITERS = 16;
+
+    private final String mRunName;
+    private final LinkedHashMap<File, Writer> mWriters = new LinkedHashMap<File, Writer>(MAX_OPEN_WRITERS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, Writer> eldest) {
+            if (size() > MAX_OPEN_WRITERS) {
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+
+            return false;
+        }
+    };
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * @param runTime the start of the run, epoch millis
+     */
+    public ChecksumManifest(long runTime) {
+        mRunName = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(runTime));
+    }
+
+    /**
+     * Appends file to the manifest of its folder. Safe to call from several
+     * threads.
+     *
+     * @param file
+     * @param digest
+     * @throws IOException
+     */
+    public synchronized void add(File file, byte[] digest) throws IOException {
+        File dir = file.getParentFile();
+        Writer writer = mWriters.get(dir);
+        if (writer == null) {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(getFile(dir), true), StandardCharsets.UTF_8));
+            mWriters.put(dir, writer);
+        }
+
+        writer.write(String.format("%s  %s/%s\n", toHex(digest), dir.getName(), file.getName()));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException exception = null;
+        for (Writer writer : mWriters.values()) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                exception = ex;
+            }
+        }
+        mWriters.clear();
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * @param dir a date folder
+     * @return the manifest of dir for this run
+     */
+    public File getFile(File dir) {
+        return new File(dir.getParentFile(), String.format("%s.%s.sha256", dir.getName(), mRunName));
+    }
+
+    private void closeQuietly(Writer writer) {
+        try {
+            writer.close();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, null, ex);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.Month;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.SignStyle;
+import java.time.format.TextStyle;
+import java.time.temporal.ChronoField;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps a point in time to its date directory below the destination.
+ * <p>
+ * Directory names are formatted with an immutable {@link DateTimeFormatter}
+ * built from the {@link java.text.SimpleDateFormat} pattern of the profile.
+ * When the date pattern has no time of day fields, the resolved directories
+ * are kept in a small direct mapped cache keyed by epoch day, so the files
+ * of an already seen day cost no formatting and no allocation.
+ * <p>
+ * Thread safe, cache entries are immutable and may be replaced concurrently.
+ *
+ * @author Patrik Karlström
+ */
+public class DateDirectoryResolver {
+
+    private static final int CACHE_SIZE = 1024;
+    private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+    private static final String TIME_LETTERS = "aHkKhmsSzZX";
+    private static final String TRANSLATED_LETTERS = "uSFL";
+
+    private final boolean mDayResolution;
+    private final File mDestDir;
+    private final DayEntry[] mEntries = new DayEntry[CACHE_SIZE];
+    private final DateTimeFormatter mFormatter;
+    private volatile OffsetWindow mOffsetWindow;
+    private final ZoneRules mRules;
+    private final ZoneId mZoneId;
+
+    /**
+     * @param destDir
+     * @param pattern the pattern formatter was created from
+     * @param formatter
+     */
+    public DateDirectoryResolver(File destDir, String pattern, DateTimeFormatter formatter) {
+        mDestDir = destDir;
+        mFormatter = formatter;
+        mZoneId = formatter.getZone() == null ? ZoneId.systemDefault() : formatter.getZone();
+        mRules = mZoneId.getRules();
+        mDayResolution = isDayResolution(pattern);
+    }
+
+    /**
+     * Creates a formatter that prints like a {@link java.text.SimpleDateFormat}
+     * of pattern.
+     * <p>
+     * Most pattern letters mean the same to both, only u (day number of week),
+     * S (millisecond), F (day of week in month, the week of the day counted
+     * from the first of the month) and L (stand-alone month, printed as a
+     * number by Java 8 for locales without stand-alone names) are translated.
+     *
+     * @param pattern a {@link java.text.SimpleDateFormat} pattern
+     * @param locale
+     * @return
+     * @throws IllegalArgumentException if pattern is invalid
+     */
+    public static DateTimeFormatter createFormatter(String pattern, Locale locale) {
+        DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder();
+        StringBuilder chunk = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            }
+
+            if (!quoted && TRANSLATED_LETTERS.indexOf(c) >= 0) {
+                int count = 1;
+                while (i + 1 < pattern.length() && pattern.charAt(i + 1) == c) {
+                    count++;
+                    i++;
+                }
+
+                builder.appendPattern(chunk.toString());
+                chunk.setLength(0);
+                if (c == 'L' && count >= 3) {
+                    builder.appendText(ChronoField.MONTH_OF_YEAR, getMonthStyle(count == 3 ? TextStyle.SHORT_STANDALONE : TextStyle.FULL_STANDALONE, locale));
+                } else {
+                    builder.appendValue(getTranslatedField(c), count, 19, SignStyle.NOT_NEGATIVE);
+                }
+            } else {
+                chunk.append(c);
+            }
+        }
+        builder.appendPattern(chunk.toString());
+
+        return builder.toFormatter(locale);
+    }
+
+    /**
+     * @param pattern a {@link java.text.SimpleDateFormat} pattern
+     * @return true if pattern formats every instant of a day the same
+     */
+    public static boolean isDayResolution(String pattern) {
+        boolean quoted = false;
+
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && TIME_LETTERS.indexOf(c) >= 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public File getDirectory(long millis) {
+        if (!mDayResolution) {
+            return format(millis);
+        }
+
+        long epochDay = getEpochDay(millis);
+        int index = (int) (epochDay & (CACHE_SIZE - 1));
+        DayEntry entry = mEntries[index];
+
+        if (entry == null || entry.mEpochDay != epochDay) {
+            entry = new DayEntry(epochDay, format(millis));
+            mEntries[index] = entry;
+        }
+
+        return entry.mDirectory;
+    }
+
+    private File format(long millis) {
+        return new File(mDestDir, mFormatter.format(Instant.ofEpochMilli(millis).atZone(mZoneId)));
+    }
+
+    private long getEpochDay(long millis) {
+        OffsetWindow window = mOffsetWindow;
+
+        if (window == null || millis < window.mStart || millis >= window.mEnd) {
+            Instant instant = Instant.ofEpochMilli(millis);
+            ZoneOffset offset = mRules.getOffset(instant);
+            ZoneOffsetTransition previous = mRules.previousTransition(instant.plusMillis(1));
+            ZoneOffsetTransition next = mRules.nextTransition(instant);
+
+            window = new OffsetWindow(
+                    previous == null ? Long.MIN_VALUE : previous.getInstant().toEpochMilli(),
+                    next == null ? Long.MAX_VALUE : next.getInstant().toEpochMilli(),
+                    TimeUnit.SECONDS.toMillis(offset.getTotalSeconds()));
+            mOffsetWindow = window;
+        }
+
+        return Math.floorDiv(millis + window.mOffset, MILLIS_PER_DAY);
+    }
+
+    /**
+     * @return style, or its format form if locale has no stand-alone names
+     */
+    private static TextStyle getMonthStyle(TextStyle style, Locale locale) {
+        String name = Month.JANUARY.getDisplayName(style, locale);
+        if (!name.isEmpty() && Character.isDigit(name.charAt(0))) {
+            return style.asNormal();
+        }
+
+        return style;
+    }
+
+    private static ChronoField getTranslatedField(char c) {
+        switch (c) {
+            case 'u':
+                return ChronoField.DAY_OF_WEEK;
+            case 'S':
+                return ChronoField.MILLI_OF_SECOND;
+            case 'F':
+                return ChronoField.ALIGNED_WEEK_OF_MONTH;
+            default:
+                return ChronoField.MONTH_OF_YEAR;
+        }
+    }
+
+    private static class DayEntry {
+
+        private final File mDirectory;
+        private final long mEpochDay;
+
+        public DayEntry(long epochDay, File directory) {
+            mEpochDay = epochDay;
+            mDirectory = directory;
+        }
+    }
+
+    private static class OffsetWindow {
+
+        private final long mEnd;
+        private final long mOffset;
+        private final long mStart;
+
+        public OffsetWindow(long start, long end, long offset) {
+            mStart = start;
+            mEnd = end;
+            mOffset = offset;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * In-memory view of the destination tree for one {@link Operation} run.
+ * <p>
+ * Each date directory is checked, created and listed once. Existing and
+ * scheduled file names go into a Bloom filter, so the common case of a new
+ * file costs no file system round trip. A possible hit is confirmed on disk,
+ * or among the names planned by a dry run, which never reach the disk.
+ * Directories on a case-insensitive file store are keyed by their lower case
+ * names, so a name differing only in case is still found.
+ * <p>
+ * Not thread safe, it belongs to the committing thread.
+ *
+ * @author Patrik Karlström
+ */
+public class DestinationIndex {
+
+    private static final int BITS = 1 << 24;
+    private static final int HASHES = 4;
+
+    private final long[] mBits = new long[BITS / Long.SIZE];
+    private final HashMap<File, Directory> mDirectories = new HashMap<>();
+    private final boolean mDryRun;
+    private final OperationMetrics mMetrics;
+    private final HashSet<String> mPlanned = new HashSet<>();
+
+    public DestinationIndex(boolean dryRun, OperationMetrics metrics) {
+        mDryRun = dryRun;
+        mMetrics = metrics;
+    }
+
+    public void add(File file) {
+        int hash1 = getKey(file).hashCode();
+        int hash2 = mix(hash1);
+
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (hash1 + i * hash2) & (BITS - 1);
+            mBits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Reserves file for a dry run, it exists from now on although it is never
+     * written.
+     *
+     * @param file
+     */
+    public void addPlanned(File file) {
+        add(file);
+        mPlanned.add(getKey(file));
+    }
+
+    public boolean exists(File file) {
+        return mightContain(file) && (mPlanned.contains(getKey(file)) || file.exists());
+    }
+
+    /**
+     * Returns the state of dir, creating it unless this is a dry run and
+     * indexing its contents the first time it is requested.
+     *
+     * @param dir
+     * @return
+     * @throws IOException
+     */
+    public Directory getDirectory(File dir) throws IOException {
+        Directory directory = mDirectories.get(dir);
+
+        if (directory == null) {
+            if (dir.isFile()) {
+                directory = new Directory(true, false);
+                mDirectories.put(dir, directory);
+            } else {
+                boolean exists = dir.exists();
+                if (!exists && !mDryRun) {
+                    long start = System.nanoTime();
+                    FileUtils.forceMkdir(dir);
+                    mMetrics.recordSince(OperationMetrics.Phase.MKDIR, start);
+                }
+                directory = new Directory(false, dir.canWrite());
+                directory.mCaseInsensitive = isCaseInsensitive(dir);
+                mDirectories.put(dir, directory);
+                if (exists) {
+                    index(dir);
+                }
+            }
+        }
+
+        return directory;
+    }
+
+    /**
+     * @return the path of file, in lower case if its directory is on a
+     * case-insensitive file store
+     */
+    private String getKey(File file) {
+        Directory directory = mDirectories.get(file.getParentFile());
+        if (directory != null && directory.mCaseInsensitive) {
+            return file.getPath().toLowerCase(Locale.ROOT);
+        }
+
+        return file.getPath();
+    }
+
+    private void index(File dir) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+            for (Path path : stream) {
+                add(path.toFile());
+            }
+        }
+    }
+
+    /**
+     * Probes the nearest existing directory, at or above dir, whose name has
+     * letters, by looking it up with the case of its name swapped.
+     */
+    private boolean isCaseInsensitive(File dir) {
+        for (File file = dir.getAbsoluteFile(); file != null; file = file.getParentFile()) {
+            String name = file.getName();
+            String swapped = name.toUpperCase(Locale.ROOT);
+            if (swapped.equals(name)) {
+                swapped = name.toLowerCase(Locale.ROOT);
+            }
+
+            if (!swapped.equals(name) && file.exists()) {
+                File other = new File(file.getParentFile(), swapped);
+                try {
+                    return other.exists() && Files.isSameFile(file.toPath(), other.toPath());
+                } catch (IOException ex) {
+                    return false;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean mightContain(File file) {
+        int hash1 = getKey(file).hashCode();
+        int hash2 = mix(hash1);
+
+        for (int i = 0; i < HASHES; i++) {
+            int bit = (hash1 + i * hash2) & (BITS - 1);
+            if ((mBits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+
+        return hash | 1;
+    }
+
+    public static class Directory {
+
+        private boolean mCaseInsensitive;
+        private final boolean mFile;
+        private final boolean mWritable;
+
+        public Directory(boolean file, boolean writable) {
+            mFile = file;
+            mWritable = writable;
+        }
+
+        public boolean isFile() {
+            return mFile;
+        }
+
+        public boolean isWritable() {
+            return mWritable;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import se.trixon.almond.util.SystemHelper;
+
+/**
+ * Runs transfers in one queue per combination of source and destination
+ * {@link FileStore}s, each with its own adaptive concurrency limit. A transfer
+ * to several destinations is queued under all of their stores.
+ * <p>
+ * A queue starts at two concurrent transfers and climbs the throughput curve:
+ * while the device is kept busy, the limit keeps moving in the same direction
+ * as long as the throughput improves and turns around when it drops. A flat
+ * response moves towards fewer transfers. When the latency per unit of work
+ * grows far beyond the best seen, as when a spinning disk starts to seek, the
+ * limit is halved.
+ * <p>
+ * The queues share the highest limit, together they never run more transfers
+ * at once than a single queue may.
+ *
+ * @author Patrik Karlström
+ */
+public class DeviceScheduler {
+
+    private static final long FILE_OVERHEAD = 64 * 1024;
+    private static final int INITIAL_LIMIT = 2;
+    private static final double LATENCY_THRASHING = 4.0;
+    private static final double THROUGHPUT_STEP = 0.05;
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final ResourceBundle mBundle = SystemHelper.getBundle(DeviceScheduler.class, "Bundle");
+    private final ExecutorService mExecutor;
+    private final FileTransfer mFileTransfer;
+    private final int mMaxLimit;
+    private final Object mLock = new Object();
+    private final ConcurrentHashMap<List<Object>, DeviceQueue> mQueues = new ConcurrentHashMap<>();
+    private int mTotalRunning;
+
+    /**
+     * @param fileTransfer used to look up file stores
+     * @param maxLimit the highest concurrency of a single queue, and of all
+     * queues together
+     * @param threadFactory
+     */
+    public DeviceScheduler(FileTransfer fileTransfer, int maxLimit, ThreadFactory threadFactory) {
+        mFileTransfer = fileTransfer;
+        mMaxLimit = maxLimit;
+        mExecutor = Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * @return a line per queue with its file stores, transfer count and
+     * current limit
+     */
+    public List<String> getSummary() {
+        List<String> lines = new ArrayList<>();
+        synchronized (mLock) {
+            mQueues.forEach((fileStores, queue) -> {
+                String destStores = fileStores.subList(1, fileStores.size()).stream()
+                        .map(String::valueOf)
+                        .collect(Collectors.joining(", "));
+                lines.add(String.format(mBundle.getString("device_queue"), fileStores.get(0), destStores, queue.mCompleted, queue.mLimit));
+            });
+        }
+
+        return lines;
+    }
+
+    /**
+     * Waits for the bookkeeping of the last transfers to finish.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+        try {
+            mExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cancels all pending transfers and interrupts the running ones.
+     */
+    public void shutdownNow() {
+        synchronized (mLock) {
+            mQueues.values().forEach((queue) -> {
+                queue.cancel();
+            });
+        }
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Queues a transfer of sourceRecord to destFiles.
+     *
+     * @param <T>
+     * @param sourceRecord
+     * @param destFiles
+     * @param callable does the transfer
+     * @return
+     */
+    public <T> Future<T> submit(FileRecord sourceRecord, List<File> destFiles, Callable<T> callable) {
+        FutureTask<T> futureTask = new FutureTask<>(callable);
+        List<Object> fileStores = new ArrayList<>();
+        fileStores.add(getFileStore(sourceRecord.getFile().getParentFile()));
+        for (File destFile : destFiles) {
+            Object fileStore = getFileStore(destFile.getParentFile());
+            if (!fileStores.subList(1, fileStores.size()).contains(fileStore)) {
+                fileStores.add(fileStore);
+            }
+        }
+
+        DeviceQueue queue = mQueues.computeIfAbsent(fileStores, (k) -> new DeviceQueue());
+        synchronized (mLock) {
+            queue.mPending.add(new Job(futureTask, sourceRecord.getSize() + FILE_OVERHEAD));
+            dispatch();
+        }
+
+        return futureTask;
+    }
+
+    /**
+     * Starts pending transfers, one queue after the other, while the queues
+     * and the scheduler have room for them.
+     */
+    private void dispatch() {
+        boolean dispatched = true;
+
+        while (dispatched && mTotalRunning < mMaxLimit) {
+            dispatched = false;
+            for (DeviceQueue queue : mQueues.values()) {
+                if (mTotalRunning < mMaxLimit && queue.dispatch()) {
+                    dispatched = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the file store of dir, or the root of its path when the store
+     * can't be determined
+     */
+    private Object getFileStore(File dir) {
+        try {
+            return mFileTransfer.getFileStore(dir.toPath());
+        } catch (IOException ex) {
+            return dir.toPath().toAbsolutePath().getRoot();
+        }
+    }
+
+    private class DeviceQueue {
+
+        private long mCompleted;
+        private int mDirection = 1;
+        private double mLastThroughput;
+        private int mLimit = Math.min(INITIAL_LIMIT, mMaxLimit);
+        private double mMinLatency = Double.MAX_VALUE;
+        private final ArrayDeque<Job> mPending = new ArrayDeque<>();
+        private int mRunning;
+        private boolean mSaturated;
+        private int mWindowCount;
+        private long mWindowLatency;
+        private long mWindowStart = System.nanoTime();
+        private long mWindowUnits;
+
+        private void adjust() {
+            long elapsed = System.nanoTime() - mWindowStart;
+            if (elapsed < WINDOW_NANOS || mWindowCount < 2 * mLimit) {
+                return;
+            }
+
+            if (mSaturated) {
+                double throughput = mWindowUnits / (double) elapsed;
+                double latency = mWindowLatency / (double) mWindowUnits;
+                mMinLatency = Math.min(mMinLatency, latency);
+
+                if (latency > mMinLatency * LATENCY_THRASHING && throughput < mLastThroughput) {
+                    mLimit = Math.max(1, mLimit / 2);
+                    mDirection = 1;
+                } else {
+                    if (throughput < mLastThroughput * (1 - THROUGHPUT_STEP)) {
+                        mDirection = -mDirection;
+                    } else if (throughput < mLastThroughput * (1 + THROUGHPUT_STEP)) {
+                        mDirection = -1;
+                    }
+                    mLimit = Math.max(1, Math.min(mMaxLimit, mLimit + mDirection));
+                }
+                mLastThroughput = throughput;
+            }
+
+            mSaturated = false;
+            mWindowCount = 0;
+            mWindowLatency = 0;
+            mWindowStart = System.nanoTime();
+            mWindowUnits = 0;
+        }
+
+        private void cancel() {
+            mPending.forEach((job) -> {
+                job.mTask.cancel(false);
+            });
+            mPending.clear();
+        }
+
+        private void complete(Job job, long latency) {
+            synchronized (mLock) {
+                mRunning--;
+                mTotalRunning--;
+                mCompleted++;
+                mSaturated |= !mPending.isEmpty();
+                mWindowCount++;
+                mWindowLatency += latency;
+                mWindowUnits += job.mUnits;
+
+                adjust();
+                DeviceScheduler.this.dispatch();
+            }
+        }
+
+        /**
+         * Starts the next pending transfer if the limit of this queue allows.
+         *
+         * @return true if a transfer was started
+         */
+        private boolean dispatch() {
+            if (mRunning >= mLimit || mPending.isEmpty()) {
+                return false;
+            }
+
+            Job job = mPending.poll();
+            mRunning++;
+            mTotalRunning++;
+            try {
+                mExecutor.execute(() -> run(job));
+            } catch (RejectedExecutionException ex) {
+                mRunning--;
+                mTotalRunning--;
+                job.mTask.cancel(false);
+            }
+
+            return true;
+        }
+
+        private void run(Job job) {
+            long start = System.nanoTime();
+            try {
+                job.mTask.run();
+            } finally {
+                complete(job, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static class Job {
+
+        private final FutureTask<?> mTask;
+        private final long mUnits;
+
+        public Job(FutureTask<?> task, long units) {
+            mTask = task;
+            mUnits = units;
+        }
+    }
+}
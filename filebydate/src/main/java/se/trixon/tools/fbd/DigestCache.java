@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Persistent cache of SHA-256 content digests, keyed by path, size and
+ * modification time.
+ * <p>
+ * Entries are evicted least recently used first once the cache holds
+ * {@link #MAX_ENTRIES} files.
+ *
+ * @author Patrik Karlström
+ */
+public class DigestCache extends FileCache<byte[]> {
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int DIGEST_LENGTH = 32;
+    private static final int FILE_FORMAT_VERSION = 2;
+    private static final int MAGIC = 0x46424448;
+
+    public static DigestCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private DigestCache() {
+        super(new File(ProfileManager.getInstance().getDirectory(), "content_digests.cache"), MAGIC, FILE_FORMAT_VERSION);
+    }
+
+    /**
+     * Returns the cached digest of fileRecord, or streams the file through
+     * the digest and caches the result. Safe to call from worker threads.
+     *
+     * @param fileRecord
+     * @return
+     * @throws IOException
+     */
+    public byte[] digest(FileRecord fileRecord) throws IOException {
+        byte[] digest = getValue(fileRecord);
+        if (digest != null) {
+            return digest;
+        }
+
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(fileRecord.getFile().toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                messageDigest.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        digest = messageDigest.digest();
+        putValue(fileRecord, digest);
+
+        return digest;
+    }
+
+    @Override
+    protected byte[] readValue(DataInputStream inputStream) throws IOException {
+        byte[] digest = new byte[DIGEST_LENGTH];
+        inputStream.readFully(digest);
+
+        return digest;
+    }
+
+    @Override
+    protected void writeValue(DataOutputStream outputStream, byte[] digest) throws IOException {
+        outputStream.write(digest);
+    }
+
+    private static class Holder {
+
+        private static final DigestCache INSTANCE = new DigestCache();
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import se.trixon.tools.api.CancellationToken;
+
+/**
+ * Single pass directory scanner.
+ * <p>
+ * Every directory entry is read from a {@link DirectoryStream} and stat'ed
+ * once, matching files are handed on as {@link FileRecord}s. With a
+ * parallelism above one, sub directories are fanned out over a work stealing
+ * {@link ForkJoinPool}; the order of the records is then unspecified.
+ * <p>
+ * The time spent per directory, not counting the consumer, is recorded as the
+ * scan phase of the {@link OperationMetrics} of the operation.
+ *
+ * @author Patrik Karlström
+ */
+public class DirectoryScanner {
+
+    private final CancellationToken mCancellationToken;
+    private Predicate<FileRecord> mFilter = (fileRecord) -> true;
+    private final boolean mFollowLinks;
+    private final Object mLock = new Object();
+    private final OperationMetrics mMetrics;
+    private final OperationListener mOperationListener;
+    private final int mParallelism;
+    private final PathMatcher mPathMatcher;
+    private final boolean mRecursive;
+
+    public DirectoryScanner(PathMatcher pathMatcher, boolean followLinks, boolean recursive, Operation operation) {
+        this(pathMatcher, followLinks, recursive, 1, operation);
+    }
+
+    public DirectoryScanner(PathMatcher pathMatcher, boolean followLinks, boolean recursive, int parallelism, Operation operation) {
+        mPathMatcher = pathMatcher;
+        mFollowLinks = followLinks;
+        mRecursive = recursive;
+        mParallelism = parallelism;
+        mOperationListener = operation.getListener();
+        mCancellationToken = operation.getCancellationToken();
+        mMetrics = operation.getMetrics();
+    }
+
+    /**
+     * Scans the tree below dir.
+     *
+     * @param dir
+     * @param consumer receives every matching file, one at a time
+     * @return false if the scan was cancelled
+     */
+    public boolean scan(Path dir, Consumer<FileRecord> consumer) {
+        Directory root = new Directory(dir, null, mFollowLinks ? getFileKey(dir) : null);
+
+        if (mParallelism > 1 && mRecursive) {
+            ForkJoinPool pool = new ForkJoinPool(mParallelism);
+            try {
+                pool.invoke(new ScanTask(root, (fileRecord) -> {
+                    synchronized (mLock) {
+                        consumer.accept(fileRecord);
+                    }
+                }));
+            } finally {
+                pool.shutdown();
+            }
+
+            return !mCancellationToken.isCancelled();
+        }
+
+        ArrayDeque<Directory> stack = new ArrayDeque<>();
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            if (!mCancellationToken.proceed()) {
+                return false;
+            }
+
+            Directory directory = stack.pop();
+            mOperationListener.onOperationLog(directory.mPath.toString());
+            try {
+                if (!scanDirectory(directory, consumer, stack::push)) {
+                    return false;
+                }
+            } catch (IOException ex) {
+                //nvm, skip unreadable directories as before
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Scans the entries of a single directory.
+     *
+     * @param directory
+     * @param consumer receives every matching file
+     * @param subDirs receives every sub directory that should be scanned
+     * @return false if the scan was cancelled
+     * @throws IOException
+     */
+    boolean scanDirectory(Directory directory, Consumer<FileRecord> consumer, Consumer<Directory> subDirs) throws IOException {
+        long start = System.nanoTime();
+        long handedOn = 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.mPath)) {
+            for (Path path : stream) {
+                if (!mCancellationToken.proceed()) {
+                    return false;
+                }
+
+                BasicFileAttributes attrs;
+                boolean link = false;
+                try {
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isSymbolicLink()) {
+                        link = true;
+                        attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    }
+                } catch (IOException ex) {
+                    continue;
+                }
+
+                if (attrs.isRegularFile()) {
+                    if (mPathMatcher.matches(path.getFileName())) {
+                        FileRecord fileRecord = new FileRecord(path.toFile(), attrs);
+                        if (mFilter.test(fileRecord)) {
+                            long handOff = System.nanoTime();
+                            consumer.accept(fileRecord);
+                            handedOn += System.nanoTime() - handOff;
+                        }
+                    }
+                } else if (attrs.isDirectory() && mRecursive && (!link || mFollowLinks)) {
+                    Object fileKey = attrs.fileKey();
+                    if (!link || !directory.isCycle(fileKey)) {
+                        subDirs.accept(new Directory(path, directory, fileKey));
+                    }
+                }
+            }
+        } finally {
+            mMetrics.record(OperationMetrics.Phase.SCAN, System.nanoTime() - start - handedOn);
+        }
+
+        return true;
+    }
+
+    static FileRecord getFileRecord(File file) throws IOException {
+        return new FileRecord(file, Files.readAttributes(file.toPath(), BasicFileAttributes.class));
+    }
+
+    /**
+     * Only hand on matching files that also pass filter.
+     *
+     * @param filter
+     */
+    public void setFilter(Predicate<FileRecord> filter) {
+        mFilter = filter;
+    }
+
+    private Object getFileKey(Path dir) {
+        try {
+            return Files.readAttributes(dir, BasicFileAttributes.class).fileKey();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private class ScanTask extends RecursiveAction {
+
+        private final Consumer<FileRecord> mConsumer;
+        private final Directory mDirectory;
+
+        public ScanTask(Directory directory, Consumer<FileRecord> consumer) {
+            mDirectory = directory;
+            mConsumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            if (!mCancellationToken.proceed()) {
+                return;
+            }
+
+            synchronized (mLock) {
+                mOperationListener.onOperationLog(mDirectory.mPath.toString());
+            }
+
+            ArrayList<ScanTask> subTasks = new ArrayList<>();
+            try {
+                if (!scanDirectory(mDirectory, mConsumer, (directory) -> subTasks.add(new ScanTask(directory, mConsumer)))) {
+                    return;
+                }
+            } catch (IOException ex) {
+                //nvm, skip unreadable directories as before
+            }
+
+            invokeAll(subTasks);
+        }
+    }
+
+    static class Directory {
+
+        private final Object mFileKey;
+        private final Directory mParent;
+        private final Path mPath;
+
+        Directory(Path path, Directory parent, Object fileKey) {
+            mPath = path;
+            mParent = parent;
+            mFileKey = fileKey;
+        }
+
+        Path getPath() {
+            return mPath;
+        }
+
+        private boolean isCycle(Object fileKey) {
+            if (fileKey == null) {
+                return false;
+            }
+
+            for (Directory directory = this; directory != null; directory = directory.mParent) {
+                if (fileKey.equals(directory.mFileKey)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
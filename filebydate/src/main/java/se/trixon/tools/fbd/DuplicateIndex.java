@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Files already in, or on their way to, the destination grouped by size.
+ * <p>
+ * Only files of equal size are ever hashed, see {@link DigestCache}. Not
+ * thread safe, it belongs to the committing thread.
+ *
+ * @author Patrik Karlström
+ */
+public class DuplicateIndex {
+
+    private final HashMap<Long, List<Candidate>> mCandidates = new HashMap<>();
+    private final HashSet<File> mIndexedDirectories = new HashSet<>();
+
+    public DuplicateIndex() {
+    }
+
+    /**
+     * @param fileRecord a file with the content of the candidate, once ready
+     * is done
+     * @param ready the pending transfer creating the file, or null
+     */
+    public void add(FileRecord fileRecord, Future<?> ready) {
+        mCandidates.computeIfAbsent(fileRecord.getSize(), k -> new ArrayList<>()).add(new Candidate(fileRecord, ready));
+    }
+
+    public List<Candidate> getCandidates(long size) {
+        List<Candidate> candidates = mCandidates.get(size);
+
+        return candidates == null ? Collections.emptyList() : candidates;
+    }
+
+    /**
+     * Adds the regular files in dir the first time it is requested.
+     *
+     * @param dir
+     * @throws IOException
+     */
+    public void indexDirectory(File dir) throws IOException {
+        if (!mIndexedDirectories.add(dir) || !dir.isDirectory()) {
+            return;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+            for (Path path : stream) {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attrs.isRegularFile()) {
+                    add(new FileRecord(path.toFile(), attrs), null);
+                }
+            }
+        }
+    }
+
+    public static class Candidate {
+
+        private final FileRecord mFileRecord;
+        private final Future<?> mReady;
+
+        public Candidate(FileRecord fileRecord, Future<?> ready) {
+            mFileRecord = fileRecord;
+            mReady = ready;
+        }
+
+        /**
+         * Waits until the candidate file holds its content.
+         *
+         * @throws InterruptedException
+         * @throws ExecutionException if the transfer creating it failed
+         */
+        public void await() throws InterruptedException, ExecutionException {
+            if (mReady != null) {
+                mReady.get();
+            }
+        }
+
+        public FileRecord getFileRecord() {
+            return mFileRecord;
+        }
+    }
+}
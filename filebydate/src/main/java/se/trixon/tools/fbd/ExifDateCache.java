@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Persistent cache of extracted EXIF DateTimeOriginal values, keyed by path,
+ * size and modification time.
+ * <p>
+ * Entries are evicted least recently used first once the cache holds
+ * {@link #MAX_ENTRIES} files.
+ *
+ * @author Patrik Karlström
+ */
+public class ExifDateCache extends FileCache<Long> {
+
+    public static final long MISS = Long.MIN_VALUE;
+    public static final long NOT_FOUND = Long.MIN_VALUE + 1;
+    public static final long NOT_SUPPORTED = Long.MIN_VALUE + 2;
+
+    private static final int FILE_FORMAT_VERSION = 2;
+    private static final int MAGIC = 0x46424445;
+
+    public static ExifDateCache getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private ExifDateCache() {
+        super(new File(ProfileManager.getInstance().getDirectory(), "exif_dates.cache"), MAGIC, FILE_FORMAT_VERSION);
+    }
+
+    /**
+     * @param fileRecord
+     * @return the cached date in milliseconds, {@link #NOT_FOUND},
+     * {@link #NOT_SUPPORTED} or {@link #MISS}
+     */
+    public long get(FileRecord fileRecord) {
+        Long value = getValue(fileRecord);
+
+        return value == null ? MISS : value;
+    }
+
+    public void put(FileRecord fileRecord, long value) {
+        putValue(fileRecord, value);
+    }
+
+    @Override
+    protected Long readValue(DataInputStream inputStream) throws IOException {
+        return inputStream.readLong();
+    }
+
+    @Override
+    protected void writeValue(DataOutputStream outputStream, Long value) throws IOException {
+        outputStream.writeLong(value);
+    }
+
+    private static class Holder {
+
+        private static final ExifDateCache INSTANCE = new ExifDateCache();
+    }
+}
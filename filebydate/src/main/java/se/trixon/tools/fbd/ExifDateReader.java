@@ -0,0 +1,195 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+/**
+ * Reads EXIF DateTimeOriginal from JPEG and TIFF based files by following the
+ * IFD chain with a handful of small positional reads.
+ * <p>
+ * Returns null whenever the file does not have the expected layout, in which
+ * case the caller falls back to the full metadata parser.
+ *
+ * @author Patrik Karlström
+ */
+public class ExifDateReader {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+    private static final int DATE_LENGTH = 19;
+    private static final int MAX_IFD_ENTRIES = 1024;
+    private static final int TAG_DATETIME_ORIGINAL = 0x9003;
+    private static final int TAG_EXIF_SUB_IFD_OFFSET = 0x8769;
+    private static final int TYPE_ASCII = 2;
+
+    private ExifDateReader() {
+    }
+
+    /**
+     * @param file
+     * @return DateTimeOriginal interpreted as UTC, the same way the metadata
+     * extractor does, or null if it could not be located
+     * @throws IOException
+     */
+    public static Date read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, 0, 4, ByteOrder.BIG_ENDIAN);
+            if (header == null) {
+                return null;
+            }
+
+            int first = header.getShort(0) & 0xffff;
+            if (first == 0xffd8) {
+                return readJpeg(channel);
+            } else if (first == 0x4949 || first == 0x4d4d) {
+                return readTiff(channel, 0);
+            }
+        }
+
+        return null;
+    }
+
+    private static Date parseDate(ByteBuffer buffer) {
+        String value = new String(buffer.array(), 0, DATE_LENGTH, StandardCharsets.US_ASCII);
+        try {
+            return Date.from(LocalDateTime.parse(value, DATE_FORMATTER).toInstant(ZoneOffset.UTC));
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length, ByteOrder byteOrder) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(byteOrder);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private static long readIfdValue(FileChannel channel, long base, long ifdOffset, int tag, ByteOrder byteOrder, boolean ascii) throws IOException {
+        ByteBuffer countBuffer = read(channel, base + ifdOffset, 2, byteOrder);
+        if (countBuffer == null) {
+            return -1;
+        }
+
+        int count = countBuffer.getShort() & 0xffff;
+        if (count == 0 || count > MAX_IFD_ENTRIES) {
+            return -1;
+        }
+
+        ByteBuffer entries = read(channel, base + ifdOffset + 2, count * 12, byteOrder);
+        if (entries == null) {
+            return -1;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int entry = i * 12;
+            if ((entries.getShort(entry) & 0xffff) == tag) {
+                if (ascii && ((entries.getShort(entry + 2) & 0xffff) != TYPE_ASCII || entries.getInt(entry + 4) < DATE_LENGTH)) {
+                    return -1;
+                }
+
+                return entries.getInt(entry + 8) & 0xffffffffL;
+            }
+        }
+
+        return -1;
+    }
+
+    private static Date readJpeg(FileChannel channel) throws IOException {
+        long position = 2;
+
+        while (true) {
+            ByteBuffer marker = read(channel, position, 4, ByteOrder.BIG_ENDIAN);
+            if (marker == null || (marker.get(0) & 0xff) != 0xff) {
+                return null;
+            }
+
+            int type = marker.get(1) & 0xff;
+            if (type == 0xff) {
+                position++;
+                continue;
+            } else if (type == 0xda || type == 0xd9) {
+                return null;
+            }
+
+            int length = marker.getShort(2) & 0xffff;
+            if (length < 2) {
+                return null;
+            }
+
+            if (type == 0xe1 && length >= 16) {
+                ByteBuffer identifier = read(channel, position + 4, 6, ByteOrder.BIG_ENDIAN);
+                if (identifier != null && "Exif\0\0".equals(new String(identifier.array(), StandardCharsets.US_ASCII))) {
+                    return readTiff(channel, position + 10);
+                }
+            }
+
+            position += 2 + length;
+        }
+    }
+
+    private static Date readTiff(FileChannel channel, long base) throws IOException {
+        ByteBuffer header = read(channel, base, 8, ByteOrder.BIG_ENDIAN);
+        if (header == null) {
+            return null;
+        }
+
+        ByteOrder byteOrder;
+        int order = header.getShort(0) & 0xffff;
+        if (order == 0x4949) {
+            byteOrder = ByteOrder.LITTLE_ENDIAN;
+        } else if (order == 0x4d4d) {
+            byteOrder = ByteOrder.BIG_ENDIAN;
+        } else {
+            return null;
+        }
+
+        header.order(byteOrder);
+        if (header.getShort(2) != 42) {
+            return null;
+        }
+
+        long exifOffset = readIfdValue(channel, base, header.getInt(4) & 0xffffffffL, TAG_EXIF_SUB_IFD_OFFSET, byteOrder, false);
+        if (exifOffset <= 0) {
+            return null;
+        }
+
+        long dateOffset = readIfdValue(channel, base, exifOffset, TAG_DATETIME_ORIGINAL, byteOrder, true);
+        if (dateOffset <= 0) {
+            return null;
+        }
+
+        ByteBuffer date = read(channel, base + dateOffset, DATE_LENGTH, byteOrder);
+
+        return date == null ? null : parseDate(date);
+    }
+}
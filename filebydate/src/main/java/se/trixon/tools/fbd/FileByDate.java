@@ -16,8 +16,11 @@
 package se.trixon.tools.fbd;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -28,20 +31,23 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.apache.commons.lang3.StringUtils;
 import org.openide.util.NbBundle;
 import se.trixon.almond.util.Dict;
 import se.trixon.almond.util.PomInfo;
+import se.trixon.tools.api.CancellationToken;
 
 /**
  *
  * @author Patrik Karlström
  */
-public class FileByDate implements OperationListener {
+public class FileByDate implements BatchOperationListener {
 
     private static String[] sArgs;
     private static final ResourceBundle sBundle = NbBundle.getBundle(FileByDate.class);
     private static Options sOptions;
     private CommandLine mCommandLine;
+    private OperationMetrics mMetrics;
     private final ProfileManager mProfileManager = ProfileManager.getInstance();
 
     public static String getHelp() {
@@ -86,6 +92,16 @@ public class FileByDate implements OperationListener {
                 System.exit(0);
             } else if (mCommandLine.hasOption("list-profiles")) {
                 displayProfiles();
+            } else if (mCommandLine.hasOption("execute-plan")) {
+                Profile profile = new Profile(mCommandLine);
+                if (profile.isValidForPlan()) {
+                    PlanExecutor planExecutor = new PlanExecutor(this, profile.getCommand(), profile.isReplaceExisting(), profile.getThreads(), new CancellationToken(), new Throttle(profile.getBandwidthLimit(), profile.getFileRateLimit()));
+                    planExecutor.setVerify(profile.isVerify());
+                    planExecutor.execute(new File(mCommandLine.getOptionValue("execute-plan")));
+                } else {
+                    System.out.println(profile.getValidationError());
+                    System.out.println(Dict.ABORTING.toString());
+                }
             } else if (mCommandLine.hasOption("view-profile")) {
                 loadProfiles();
                 Profile profile = mProfileManager.getProfile(mCommandLine.getOptionValue("view-profile"));
@@ -107,14 +123,66 @@ public class FileByDate implements OperationListener {
                         System.exit(1);
                     } else {
                         profile.setDryRun(mCommandLine.hasOption("dry-run"));
+                        profile.setThreadsString(mCommandLine.getOptionValue("threads"));
+                        profile.setBandwidthLimitString(mCommandLine.getOptionValue("bandwidth-limit"));
+                        profile.setFileRateLimitString(mCommandLine.getOptionValue("file-rate-limit"));
+                        if (mCommandLine.hasOption("stream")) {
+                            profile.setStreaming(true);
+                        }
+                        if (mCommandLine.hasOption("dedup")) {
+                            profile.setDeduplicate(true);
+                        }
+                        if (mCommandLine.hasOption("incremental")) {
+                            profile.setIncremental(true);
+                        }
+                        if (mCommandLine.hasOption("inode-order")) {
+                            profile.setInodeOrder(true);
+                        }
+                        if (mCommandLine.hasOption("verify")) {
+                            profile.setVerify(true);
+                        }
+                        if (mCommandLine.hasOption("additional-dest")) {
+                            List<File> destDirs = new ArrayList<>();
+                            for (String destDir : mCommandLine.getOptionValues("additional-dest")) {
+                                destDirs.add(new File(destDir));
+                            }
+                            profile.setAdditionalDestDirs(destDirs);
+                        }
+                        if (mCommandLine.hasOption("additional-source")) {
+                            List<File> sourceDirs = new ArrayList<>();
+                            for (String sourceDir : mCommandLine.getOptionValues("additional-source")) {
+                                sourceDirs.add(new File(sourceDir));
+                            }
+                            profile.setAdditionalSourceDirs(sourceDirs);
+                        }
+                        if (mCommandLine.hasOption("plan")) {
+                            profile.setPlanFile(new File(mCommandLine.getOptionValue("plan")));
+                        }
                     }
                 } else {
                     profile = new Profile(mCommandLine);
                 }
 
                 if (profile.isValid()) {
-                    Operation operation = new Operation(this, profile);
-                    operation.start();
+                    if ((mCommandLine.hasOption("undo") || mCommandLine.hasOption("resume")) && StringUtils.isBlank(profile.getName())) {
+                        System.err.println(sBundle.getString("invalid_journal"));
+                        System.exit(1);
+                    } else if (profile.isIncremental() && StringUtils.isBlank(profile.getName())) {
+                        System.err.println(sBundle.getString("invalid_incremental"));
+                        System.exit(1);
+                    } else if (mCommandLine.hasOption("undo")) {
+                        try {
+                            int count = new RunJournal(profile).undo(this, profile.getDestDirs());
+                            System.out.println(String.format(sBundle.getString("undo_count"), count));
+                        } catch (IOException ex) {
+                            System.err.println(ex.getLocalizedMessage());
+                            System.exit(1);
+                        }
+                    } else {
+                        Operation operation = new Operation(this, profile);
+                        operation.setResume(mCommandLine.hasOption("resume"));
+                        operation.start();
+                    }
                 } else {
                     System.out.println(profile.getValidationError());
                     System.out.println(Dict.ABORTING.toString());
@@ -134,16 +202,28 @@ public class FileByDate implements OperationListener {
     @Override
     public void onOperationFinished(String message, int fileCount) {
         System.out.println(Dict.DONE.toString());
+        displayMetrics();
     }
 
     @Override
     public void onOperationInterrupted() {
         System.out.println(Dict.OPERATION_INTERRUPTED.toString());
+        displayMetrics();
     }
 
     @Override
-    public void onOperationLog(String message) {
-        System.out.println(message);
+    public void onOperationLog(List<String> messages) {
+        StringBuilder builder = new StringBuilder();
+        messages.forEach((message) -> {
+            builder.append(message).append(System.lineSeparator());
+        });
+        System.out.print(builder);
+        System.out.flush();
+    }
+
+    @Override
+    public void onOperationMetrics(OperationMetrics metrics) {
+        mMetrics = metrics;
     }
 
     @Override
@@ -162,6 +242,15 @@ public class FileByDate implements OperationListener {
         System.out.println(getHelp());
     }
 
+    private void displayMetrics() {
+        if (mMetrics != null) {
+            System.out.println();
+            mMetrics.getSummary().forEach((line) -> {
+                System.out.println(line);
+            });
+        }
+    }
+
     private void displayProfiles() {
         loadProfiles();
         if (mProfileManager.hasProfiles()) {
@@ -199,6 +288,16 @@ public class FileByDate implements OperationListener {
                 .desc(sBundle.getString("opt_move_desc"))
                 .build();
 
+        Option link = Option.builder("ln")
+                .longOpt("link")
+                .desc(sBundle.getString("opt_link_desc"))
+                .build();
+
+        Option clone = Option.builder("cl")
+                .longOpt("clone")
+                .desc(sBundle.getString("opt_clone_desc"))
+                .build();
+
         Option recursive = Option.builder("r")
                 .longOpt("recursive")
                 .desc(sBundle.getString("opt_recursive_desc"))
@@ -219,6 +318,31 @@ public class FileByDate implements OperationListener {
                 .desc(sBundle.getString("opt_overwrite_desc"))
                 .build();
 
+        Option stream = Option.builder("st")
+                .longOpt("stream")
+                .desc(sBundle.getString("opt_stream_desc"))
+                .build();
+
+        Option dedup = Option.builder("dd")
+                .longOpt("dedup")
+                .desc(sBundle.getString("opt_dedup_desc"))
+                .build();
+
+        Option inodeOrder = Option.builder("io")
+                .longOpt("inode-order")
+                .desc(sBundle.getString("opt_inode_order_desc"))
+                .build();
+
+        Option verify = Option.builder("vf")
+                .longOpt("verify")
+                .desc(sBundle.getString("opt_verify_desc"))
+                .build();
+
+        Option incremental = Option.builder("i")
+                .longOpt("incremental")
+                .desc(sBundle.getString("opt_incremental_desc"))
+                .build();
+
         Option datePattern = Option.builder("dp")
                 .longOpt("date-pattern")
                 .desc(sBundle.getString("opt_date_pattern_desc"))
@@ -247,6 +371,55 @@ public class FileByDate implements OperationListener {
                 .optionalArg(false)
                 .build();
 
+        Option threads = Option.builder("t")
+                .longOpt("threads")
+                .desc(sBundle.getString("opt_threads_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option bandwidthLimit = Option.builder("bw")
+                .longOpt("bandwidth-limit")
+                .desc(sBundle.getString("opt_bandwidth_limit_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option fileRateLimit = Option.builder("fr")
+                .longOpt("file-rate-limit")
+                .desc(sBundle.getString("opt_file_rate_limit_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option additionalDest = Option.builder("ad")
+                .longOpt("additional-dest")
+                .desc(sBundle.getString("opt_additional_dest_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option additionalSource = Option.builder("as")
+                .longOpt("additional-source")
+                .desc(sBundle.getString("opt_additional_source_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option plan = Option.builder("pl")
+                .longOpt("plan")
+                .desc(sBundle.getString("opt_plan_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option executePlan = Option.builder("xp")
+                .longOpt("execute-plan")
+                .desc(sBundle.getString("opt_execute_plan_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
         Option profile = Option.builder("rp")
                 .longOpt("run-profile")
                 .hasArg()
@@ -254,6 +427,16 @@ public class FileByDate implements OperationListener {
                 .desc(sBundle.getString("opt_profile_desc"))
                 .build();
 
+        Option resume = Option.builder("rs")
+                .longOpt("resume")
+                .desc(sBundle.getString("opt_resume_desc"))
+                .build();
+
+        Option undo = Option.builder("un")
+                .longOpt("undo")
+                .desc(sBundle.getString("opt_undo_desc"))
+                .build();
+
         Option listProfiles = Option.builder("lp")
                 .longOpt("list-profiles")
                 .desc(sBundle.getString("opt_list_profiles_desc"))
@@ -270,11 +453,18 @@ public class FileByDate implements OperationListener {
 
         sOptions.addOption(copy);
         sOptions.addOption(move);
+        sOptions.addOption(link);
+        sOptions.addOption(clone);
 
         sOptions.addOption(dryRun);
         sOptions.addOption(links);
         sOptions.addOption(overwrite);
         sOptions.addOption(recursive);
+        sOptions.addOption(stream);
+        sOptions.addOption(dedup);
+        sOptions.addOption(incremental);
+        sOptions.addOption(inodeOrder);
+        sOptions.addOption(verify);
 
         sOptions.addOption(datePattern);
         sOptions.addOption(dateSource);
@@ -282,9 +472,20 @@ public class FileByDate implements OperationListener {
         sOptions.addOption(caseBase);
         sOptions.addOption(caseExt);
 
+        sOptions.addOption(threads);
+        sOptions.addOption(bandwidthLimit);
+        sOptions.addOption(fileRateLimit);
+
+        sOptions.addOption(additionalDest);
+        sOptions.addOption(additionalSource);
+        sOptions.addOption(plan);
+        sOptions.addOption(executePlan);
+
         sOptions.addOption(listProfiles);
         sOptions.addOption(viewProfile);
         sOptions.addOption(profile);
+        sOptions.addOption(resume);
+        sOptions.addOption(undo);
 
         sOptions.addOption(help);
         sOptions.addOption(version);
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent cache of a value per file, keyed by the absolute, normalized
+ * path, the size and the modification time of the file.
+ * <p>
+ * The cache file is replaced atomically on save. Entries are evicted least
+ * recently used first once the cache holds {@link #MAX_ENTRIES} files.
+ *
+ * @author Patrik Karlström
+ * @param <V> the cached value
+ */
+public abstract class FileCache<V> {
+
+    //an entry holds a path and a few longs, the two caches together stay in the tens of MB
+    public static final int MAX_ENTRIES = 100000;
+
+    private static final Logger LOGGER = Logger.getLogger(FileCache.class.getName());
+
+    private boolean mDirty;
+    private final LinkedHashMap<String, CacheEntry<V>> mEntries = new LinkedHashMap<String, CacheEntry<V>>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<V>> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final File mFile;
+    private final int mFileFormatVersion;
+    private boolean mLoaded;
+    private final int mMagic;
+
+    /**
+     * @param file the cache file
+     * @param magic identifies the cache file
+     * @param fileFormatVersion a cache file of another version is discarded
+     */
+    protected FileCache(File file, int magic, int fileFormatVersion) {
+        mFile = file;
+        mMagic = magic;
+        mFileFormatVersion = fileFormatVersion;
+    }
+
+    /**
+     * Drops every entry, the next save empties the cache file.
+     */
+    public synchronized void clear() {
+        mEntries.clear();
+        mDirty = true;
+    }
+
+    public synchronized void load() {
+        if (mLoaded) {
+            return;
+        }
+
+        mLoaded = true;
+        if (!mFile.isFile()) {
+            return;
+        }
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)))) {
+            if (inputStream.readInt() != mMagic || inputStream.readInt() != mFileFormatVersion) {
+                return;
+            }
+
+            int count = inputStream.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = inputStream.readUTF();
+                long size = inputStream.readLong();
+                long lastModified = inputStream.readLong();
+                mEntries.put(path, new CacheEntry<>(size, lastModified, readValue(inputStream)));
+            }
+        } catch (IOException ex) {
+            mEntries.clear();
+            LOGGER.log(Level.WARNING, "Discarding unreadable cache " + mFile, ex);
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        if (!mDirty) {
+            return;
+        }
+
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            outputStream.writeInt(mMagic);
+            outputStream.writeInt(mFileFormatVersion);
+            outputStream.writeInt(mEntries.size());
+
+            for (Map.Entry<String, CacheEntry<V>> mapEntry : mEntries.entrySet()) {
+                CacheEntry<V> entry = mapEntry.getValue();
+                outputStream.writeUTF(mapEntry.getKey());
+                outputStream.writeLong(entry.mSize);
+                outputStream.writeLong(entry.mLastModified);
+                writeValue(outputStream, entry.mValue);
+            }
+        }
+
+        try {
+            Files.move(tmpFile.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmpFile.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        mDirty = false;
+    }
+
+    /**
+     * @param fileRecord
+     * @return the cached value of fileRecord, null if it is missing or the
+     * file has changed since
+     */
+    protected synchronized V getValue(FileRecord fileRecord) {
+        CacheEntry<V> entry = mEntries.get(getKey(fileRecord));
+
+        if (entry != null && entry.mSize == fileRecord.getSize() && entry.mLastModified == fileRecord.getLastModified()) {
+            return entry.mValue;
+        }
+
+        return null;
+    }
+
+    protected synchronized void putValue(FileRecord fileRecord, V value) {
+        mEntries.put(getKey(fileRecord), new CacheEntry<>(fileRecord.getSize(), fileRecord.getLastModified(), value));
+        mDirty = true;
+    }
+
+    protected abstract V readValue(DataInputStream inputStream) throws IOException;
+
+    protected abstract void writeValue(DataOutputStream outputStream, V value) throws IOException;
+
+    private String getKey(FileRecord fileRecord) {
+        return fileRecord.getFile().toPath().toAbsolutePath().normalize().toString();
+    }
+
+    private static class CacheEntry<V> {
+
+        private final long mLastModified;
+        private final long mSize;
+        private final V mValue;
+
+        public CacheEntry(long size, long lastModified, V value) {
+            mSize = size;
+            mLastModified = lastModified;
+            mValue = value;
+        }
+    }
+}
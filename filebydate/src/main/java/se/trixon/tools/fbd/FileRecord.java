@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A scanned source file together with the attributes that were read while
+ * scanning, so that later stages don't have to stat it again.
+ *
+ * @author Patrik Karlström
+ */
+public class FileRecord implements Comparable<FileRecord> {
+
+    private final long mCreated;
+    private final File mFile;
+    private Object mFileKey;
+    private final long mLastModified;
+    private final long mSize;
+
+    public FileRecord(File file, BasicFileAttributes attrs) {
+        this(file, attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.creationTime().toMillis());
+        mFileKey = attrs.fileKey();
+    }
+
+    public FileRecord(File file, long size, long lastModified, long created) {
+        mFile = file;
+        mSize = size;
+        mLastModified = lastModified;
+        mCreated = created;
+    }
+
+    @Override
+    public int compareTo(FileRecord o) {
+        return mFile.compareTo(o.mFile);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof FileRecord && mFile.equals(((FileRecord) obj).mFile);
+    }
+
+    public long getCreated() {
+        return mCreated;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return the {@link BasicFileAttributes#fileKey()} read while scanning,
+     * null if unknown
+     */
+    public Object getFileKey() {
+        return mFileKey;
+    }
+
+    public long getLastModified() {
+        return mLastModified;
+    }
+
+    public long getSize() {
+        return mSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return mFile.hashCode();
+    }
+
+    /**
+     * @param time epoch millis
+     * @return true if the file was created or modified at or after time
+     */
+    public boolean isChangedSince(long time) {
+        return mLastModified >= time || mCreated >= time;
+    }
+
+    @Override
+    public String toString() {
+        return mFile.toString();
+    }
+}
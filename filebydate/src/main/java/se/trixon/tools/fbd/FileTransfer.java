@@ -0,0 +1,598 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import se.trixon.tools.fbd.Operation.Command;
+import se.trixon.tools.fbd.OperationMetrics.Phase;
+
+/**
+ * Copies and moves files for an {@link Operation}.
+ * <p>
+ * Moves within a file store are plain renames, only cross device moves copy
+ * any bytes. Copies use {@link FileChannel#transferTo} and files that fit in
+ * a single pooled direct buffer are copied with one read and one write.
+ * Clones are delegated to {@code cp} on Linux and macOS, which shares the data
+ * blocks on copy-on-write file systems. Copies to several destinations read
+ * the source once and write every buffer to all of them concurrently, one
+ * writer per destination, while the next buffer is read.
+ * <p>
+ * With a {@link ChecksumManifest} copies are hashed while streaming and the
+ * destination is confirmed by size and digest before a move removes the
+ * source. Clones are confirmed against a hash of the source, links and
+ * renames share the data of the source and are only hashed for the manifest.
+ * <p>
+ * Every transfer takes its files and bytes from a {@link Throttle}. While the
+ * bandwidth is limited large copies are transferred in slices so that a
+ * single file can not exhaust the budget of a whole second.
+ *
+ * @author Patrik Karlström
+ */
+public class FileTransfer {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 64;
+    private static final long THROTTLED_TRANSFER_SIZE = 4 * BUFFER_SIZE;
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(new WriterThreadFactory());
+
+    private final ConcurrentLinkedQueue<ByteBuffer> mBufferPool = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<Path, FileStore> mFileStores = new ConcurrentHashMap<>();
+    private ChecksumManifest mManifest;
+    private final OperationMetrics mMetrics;
+    private Throttle mThrottle = new Throttle();
+
+    public FileTransfer() {
+        this(null);
+    }
+
+    /**
+     * @param metrics receives the latency of every transfer, may be null
+     */
+    public FileTransfer(OperationMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public void clone(FileRecord sourceRecord, File destFile) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add("cp");
+        if (SystemUtils.IS_OS_LINUX) {
+            command.add("--reflink=auto");
+            command.add("--preserve=timestamps");
+        } else if (SystemUtils.IS_OS_MAC) {
+            command.add("-c");
+            command.add("-p");
+        } else {
+            copy(sourceRecord, destFile);
+            return;
+        }
+        command.add("--");
+        command.add(sourceRecord.getFile().getPath());
+        command.add(destFile.getPath());
+
+        Process process = null;
+        try {
+            process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(new File("/dev/null")).start();
+            if (process.waitFor() == 0) {
+                //charged afterwards, a failed cp is charged by the copy below
+                mThrottle.acquireBytes(sourceRecord.getSize());
+                if (mManifest != null) {
+                    verify(destFile, sourceRecord.getSize(), digest(sourceRecord.getFile()));
+                }
+                return;
+            }
+        } catch (InterruptedException ex) {
+            //don't leave cp running, it would keep writing the destination
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } catch (IOException ex) {
+            //nvm, copy below
+        }
+
+        copy(sourceRecord, destFile);
+    }
+
+    public void copy(FileRecord sourceRecord, File destFile) throws IOException {
+        Path source = sourceRecord.getFile().toPath();
+        Path dest = destFile.toPath();
+        long size = sourceRecord.getSize();
+        MessageDigest digest = mManifest == null ? null : createDigest();
+        boolean opened = false;
+        long copied;
+
+        try {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(dest, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                opened = true;
+                if (digest != null) {
+                    copied = copyDigesting(in, out, digest);
+                } else if (size <= BUFFER_SIZE) {
+                    copied = copySmall(in, out);
+                } else {
+                    copied = copyLarge(in, out, size);
+                }
+            }
+
+            if (copied != size) {
+                throw new IOException(String.format("Failed to copy full contents from '%s' to '%s'", source, dest));
+            }
+
+            Files.setLastModifiedTime(dest, FileTime.fromMillis(sourceRecord.getLastModified()));
+        } catch (IOException ex) {
+            //a destination that could not be opened may be an existing file, keep it
+            if (opened) {
+                FileUtils.deleteQuietly(destFile);
+            }
+            throw ex;
+        }
+
+        if (digest != null) {
+            verify(destFile, size, digest.digest());
+        }
+    }
+
+    /**
+     * Reads sourceRecord once and writes every buffer to each of destFiles,
+     * all destinations at the same time. A destination that fails is left out
+     * from then on and its partial file is removed.
+     *
+     * @param sourceRecord
+     * @param destFiles
+     * @return the failed destinations, empty if all succeeded
+     * @throws IOException if the source could not be read
+     */
+    public Map<File, IOException> copy(FileRecord sourceRecord, List<File> destFiles) throws IOException {
+        Path source = sourceRecord.getFile().toPath();
+        LinkedHashMap<File, IOException> failures = new LinkedHashMap<>();
+        FileChannel[] outs = new FileChannel[destFiles.size()];
+        //only opened destinations are ours to remove, the others may be existing files or directories
+        boolean[] opened = new boolean[outs.length];
+        MessageDigest digest = mManifest == null ? null : createDigest();
+        boolean completed = false;
+        long copied = 0;
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            for (int i = 0; i < outs.length; i++) {
+                try {
+                    outs[i] = FileChannel.open(destFiles.get(i).toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                    opened[i] = true;
+                } catch (IOException ex) {
+                    failures.put(destFiles.get(i), ex);
+                }
+            }
+
+            ByteBuffer buffer = acquireBuffer();
+            ByteBuffer next = acquireBuffer();
+            List<Future<Void>> writes = new ArrayList<>(outs.length);
+            try {
+                boolean filled = in.read(buffer) >= 0;
+                while (failures.size() < outs.length && filled) {
+                    buffer.flip();
+                    if (digest != null) {
+                        digest.update(buffer.duplicate());
+                    }
+                    mThrottle.acquireBytes((long) buffer.remaining() * (outs.length - failures.size()));
+                    for (FileChannel out : outs) {
+                        writes.add(out == null ? null : WRITERS.submit(createWrite(out, buffer.duplicate())));
+                    }
+
+                    filled = in.read(next) >= 0;
+
+                    for (int i = 0; i < outs.length; i++) {
+                        try {
+                            if (writes.get(i) != null) {
+                                writes.get(i).get();
+                            }
+                        } catch (ExecutionException ex) {
+                            failures.put(destFiles.get(i), ex.getCause() instanceof IOException ? (IOException) ex.getCause() : new IOException(ex.getCause()));
+                            closeQuietly(outs[i]);
+                            outs[i] = null;
+                        }
+                    }
+                    writes.clear();
+                    copied += buffer.remaining();
+                    buffer.clear();
+
+                    ByteBuffer swap = buffer;
+                    buffer = next;
+                    next = swap;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ex);
+            } finally {
+                //a buffer may still be written to after a failed read, leave it to the gc
+                if (writes.isEmpty()) {
+                    releaseBuffer(buffer);
+                    releaseBuffer(next);
+                }
+            }
+            completed = true;
+        } finally {
+            for (FileChannel out : outs) {
+                closeQuietly(out);
+            }
+
+            if (!completed) {
+                deleteOpened(destFiles, opened);
+            }
+        }
+
+        if (failures.size() < outs.length && copied != sourceRecord.getSize()) {
+            deleteOpened(destFiles, opened);
+            throw new IOException(String.format("Failed to copy full contents from '%s'", source));
+        }
+
+        byte[] expected = digest == null ? null : digest.digest();
+        for (int i = 0; i < outs.length; i++) {
+            File destFile = destFiles.get(i);
+            if (failures.containsKey(destFile)) {
+                if (opened[i]) {
+                    FileUtils.deleteQuietly(destFile);
+                }
+            } else {
+                try {
+                    Files.setLastModifiedTime(destFile.toPath(), FileTime.fromMillis(sourceRecord.getLastModified()));
+                    if (expected != null) {
+                        verify(destFile, copied, expected);
+                    }
+                } catch (IOException ex) {
+                    FileUtils.deleteQuietly(destFile);
+                    failures.put(destFile, ex);
+                }
+            }
+        }
+
+        return failures;
+    }
+
+    /**
+     * @param dir
+     * @return the file store of dir, cached per directory
+     * @throws IOException
+     */
+    public FileStore getFileStore(Path dir) throws IOException {
+        FileStore fileStore = mFileStores.get(dir);
+        if (fileStore == null) {
+            fileStore = Files.getFileStore(dir);
+            mFileStores.putIfAbsent(dir, fileStore);
+        }
+
+        return fileStore;
+    }
+
+    public boolean isSameFileStore(File sourceFile, File destDir) {
+        try {
+            return getFileStore(sourceFile.getParentFile().toPath()).equals(getFileStore(destDir.toPath()));
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    public void link(FileRecord sourceRecord, File destFile) throws IOException {
+        Files.deleteIfExists(destFile.toPath());
+        Files.createLink(destFile.toPath(), sourceRecord.getFile().toPath());
+        if (mManifest != null) {
+            mManifest.add(destFile, digest(destFile));
+        }
+    }
+
+    public void move(FileRecord sourceRecord, File destFile) throws IOException {
+        File sourceFile = sourceRecord.getFile();
+
+        long start = System.nanoTime();
+        if (isSameFileStore(sourceFile, destFile.getParentFile())) {
+            try {
+                Files.move(sourceFile.toPath(), destFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                record(Phase.COPY, start);
+                if (mManifest != null) {
+                    mManifest.add(destFile, digest(destFile));
+                }
+                return;
+            } catch (AtomicMoveNotSupportedException ex) {
+                //nvm, copy and delete below
+            }
+        }
+
+        copy(sourceRecord, destFile);
+        record(Phase.COPY, start);
+
+        start = System.nanoTime();
+        FileUtils.deleteQuietly(sourceFile);
+        record(Phase.DELETE, start);
+    }
+
+    /**
+     * Hashes and verifies every copy from now on and adds it to manifest.
+     *
+     * @param manifest the manifest of the run, or null to not verify
+     */
+    public void setManifest(ChecksumManifest manifest) {
+        mManifest = manifest;
+    }
+
+    /**
+     * @param throttle limits the files and bytes of every transfer from now on
+     */
+    public void setThrottle(Throttle throttle) {
+        mThrottle = throttle;
+    }
+
+    public void transfer(Command command, FileRecord sourceRecord, File destFile) throws IOException {
+        mThrottle.acquireFiles(1);
+        long start = System.nanoTime();
+
+        if (command == Command.COPY) {
+            copy(sourceRecord, destFile);
+        } else if (command == Command.MOVE) {
+            move(sourceRecord, destFile);
+            return;
+        } else if (command == Command.LINK) {
+            link(sourceRecord, destFile);
+        } else if (command == Command.CLONE) {
+            clone(sourceRecord, destFile);
+        }
+
+        record(Phase.COPY, start);
+    }
+
+    /**
+     * Transfers sourceRecord to all of destFiles. Copies and moves read the
+     * source once, a move removes it when every destination has it.
+     *
+     * @param command
+     * @param sourceRecord
+     * @param destFiles
+     * @return the failed destinations, empty if all succeeded
+     * @throws IOException if no destination got the file
+     */
+    public Map<File, IOException> transfer(Command command, FileRecord sourceRecord, List<File> destFiles) throws IOException {
+        if (destFiles.size() == 1) {
+            transfer(command, sourceRecord, destFiles.get(0));
+            return Collections.emptyMap();
+        }
+
+        mThrottle.acquireFiles(destFiles.size());
+        long start = System.nanoTime();
+        Map<File, IOException> failures;
+
+        if (command == Command.COPY || command == Command.MOVE) {
+            failures = copy(sourceRecord, destFiles);
+        } else {
+            failures = new LinkedHashMap<>();
+            for (File destFile : destFiles) {
+                try {
+                    if (command == Command.LINK) {
+                        link(sourceRecord, destFile);
+                    } else {
+                        clone(sourceRecord, destFile);
+                    }
+                } catch (IOException ex) {
+                    failures.put(destFile, ex);
+                }
+            }
+        }
+        record(Phase.COPY, start);
+
+        if (failures.size() == destFiles.size()) {
+            throw failures.values().iterator().next();
+        }
+
+        if (command == Command.MOVE && failures.isEmpty()) {
+            start = System.nanoTime();
+            FileUtils.deleteQuietly(sourceRecord.getFile());
+            record(Phase.DELETE, start);
+        }
+
+        return failures;
+    }
+
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = mBufferPool.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        buffer.clear();
+
+        return buffer;
+    }
+
+    private void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                //nvm
+            }
+        }
+    }
+
+    private Callable<Void> createWrite(FileChannel out, ByteBuffer buffer) {
+        return () -> {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+
+            return null;
+        };
+    }
+
+    private long copyDigesting(FileChannel in, FileChannel out, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = acquireBuffer();
+        long copied = 0;
+
+        try {
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                mThrottle.acquireBytes(buffer.remaining());
+                while (buffer.hasRemaining()) {
+                    copied += out.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            releaseBuffer(buffer);
+        }
+
+        return copied;
+    }
+
+    private long copyLarge(FileChannel in, FileChannel out, long size) throws IOException {
+        long position = 0;
+
+        while (position < size) {
+            long count = size - position;
+            if (mThrottle.isBytesLimited()) {
+                count = Math.min(count, THROTTLED_TRANSFER_SIZE);
+            }
+            count = in.transferTo(position, count, out);
+            if (count <= 0) {
+                break;
+            }
+            position += count;
+            mThrottle.acquireBytes(count);
+        }
+
+        //continue to the end, a file that grew since the scan must not be truncated silently
+        in.position(position);
+        position += copySmall(in, out);
+
+        return position;
+    }
+
+    private long copySmall(FileChannel in, FileChannel out) throws IOException {
+        ByteBuffer buffer = acquireBuffer();
+        long copied = 0;
+
+        try {
+            while (in.read(buffer) >= 0 || buffer.position() > 0) {
+                buffer.flip();
+                int written = out.write(buffer);
+                copied += written;
+                mThrottle.acquireBytes(written);
+                buffer.compact();
+            }
+        } finally {
+            releaseBuffer(buffer);
+        }
+
+        return copied;
+    }
+
+    private MessageDigest createDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(ChecksumManifest.ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private void deleteOpened(List<File> destFiles, boolean[] opened) {
+        for (int i = 0; i < opened.length; i++) {
+            if (opened[i]) {
+                FileUtils.deleteQuietly(destFiles.get(i));
+            }
+        }
+    }
+
+    private byte[] digest(File file) throws IOException {
+        MessageDigest digest = createDigest();
+        ByteBuffer buffer = acquireBuffer();
+
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                mThrottle.acquireBytes(buffer.remaining());
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            releaseBuffer(buffer);
+        }
+
+        return digest.digest();
+    }
+
+    private void record(Phase phase, long start) {
+        if (mMetrics != null) {
+            mMetrics.recordSince(phase, start);
+        }
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        if (mBufferPool.size() < MAX_POOLED_BUFFERS) {
+            mBufferPool.offer(buffer);
+        }
+    }
+
+    /**
+     * Reads destFile back and compares it with the digest of the copied
+     * bytes, a mismatching file is removed.
+     */
+    private void verify(File destFile, long size, byte[] expected) throws IOException {
+        long start = System.nanoTime();
+
+        if (destFile.length() != size || !MessageDigest.isEqual(expected, digest(destFile))) {
+            FileUtils.deleteQuietly(destFile);
+            throw new IOException(String.format("Verification failed for '%s'", destFile));
+        }
+
+        record(Phase.VERIFY, start);
+        mManifest.add(destFile, expected);
+    }
+
+    private static class WriterThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FileByDate-writer-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
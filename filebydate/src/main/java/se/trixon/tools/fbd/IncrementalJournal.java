@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * High-water mark journal for incremental runs of a profile.
+ * <p>
+ * A run appends a start line and, when it completes, replaces the journal
+ * with a single done line holding the new high-water mark. A run that never
+ * completes therefore leaves the previous mark in place.
+ *
+ * @author Patrik Karlström
+ */
+public class IncrementalJournal {
+
+    private static final String DONE = "done";
+    private static final String START = "start";
+
+    private final File mFile;
+    private final Profile mProfile;
+
+    public IncrementalJournal(Profile profile) {
+        mProfile = profile;
+        String name = profile.getName() == null ? "" : profile.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        mFile = new File(new File(ProfileManager.getInstance().getDirectory(), "incremental"), name + ".journal");
+    }
+
+    /**
+     * @param highWaterMark files changed at or after this time are picked up
+     * by the next run
+     * @throws IOException
+     */
+    public void complete(long highWaterMark) throws IOException {
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        Files.write(tmpFile.toPath(), String.format("%s %d%n", DONE, highWaterMark).getBytes(StandardCharsets.UTF_8));
+
+        try {
+            Files.move(tmpFile.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmpFile.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return the mark of the last completed run, or the last run of the
+     * profile if the journal holds none
+     */
+    public long getHighWaterMark() {
+        long highWaterMark = mProfile.getLastRun();
+
+        if (mFile.isFile()) {
+            try {
+                List<String> lines = Files.readAllLines(mFile.toPath(), StandardCharsets.UTF_8);
+                for (String line : lines) {
+                    String[] items = line.trim().split(" ");
+                    if (items.length == 2 && DONE.equals(items[0])) {
+                        highWaterMark = Long.parseLong(items[1]);
+                    }
+                }
+            } catch (IOException | NumberFormatException ex) {
+                highWaterMark = 0;
+            }
+        }
+
+        return highWaterMark;
+    }
+
+    /**
+     * @return true if the last run that started never completed
+     */
+    public boolean isIncomplete() {
+        try {
+            List<String> lines = Files.readAllLines(mFile.toPath(), StandardCharsets.UTF_8);
+
+            return !lines.isEmpty() && lines.get(lines.size() - 1).startsWith(START);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    public void start(long startTime) throws IOException {
+        FileUtils.forceMkdir(mFile.getParentFile());
+        Files.write(mFile.toPath(), String.format("%s %d%n", START, startTime).getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+    }
+}
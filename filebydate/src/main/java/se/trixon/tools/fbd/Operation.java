@@ -24,26 +24,46 @@ import com.drew.metadata.Metadata;
 import com.drew.metadata.exif.ExifSubIFDDirectory;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileVisitOption;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
-import java.nio.file.PathMatcher;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.apache.commons.io.FileUtils;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import se.trixon.almond.util.Dict;
 import se.trixon.almond.util.SystemHelper;
 import se.trixon.almond.util.Xlog;
+import se.trixon.tools.api.CancellationToken;
 
 /**
  *
@@ -51,22 +71,87 @@ import se.trixon.almond.util.Xlog;
  */
 public class Operation {
 
+    private static final Pattern FILE_KEY = Pattern.compile("\\(dev=(\\p{XDigit}+),ino=(-?\\d+)\\)");
+    private static final int LOCALITY_BATCH = 4096;
+    private static final Comparator<Task> LOCALITY_ORDER = Comparator.<Task>comparingLong(task -> task.mDevice).thenComparingLong(task -> task.mInode);
     private static final Logger LOGGER = Logger.getLogger(Operation.class.getName());
+    private static final long METRICS_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    private static final int STREAM_CAPACITY = 4096;
+    private static final int WINDOW_PER_THREAD = 4;
 
     private final ResourceBundle mBundle;
+    private final CancellationToken mCancellationToken;
+    private long mChangedSince;
+    private final HashSet<File> mCompletedSources = new HashSet<>();
     private final List<Exception> mExceptions = new ArrayList<>();
-    private final List<File> mFiles = new ArrayList<>();
+    private final DestinationIndex mDestinationIndex;
+    private final ArrayList<Destination> mDestinations = new ArrayList<>();
+    private DeviceScheduler mDeviceScheduler;
+    private final DigestCache mDigestCache = DigestCache.getInstance();
+    private final ExifDateCache mExifDateCache = ExifDateCache.getInstance();
+    private long mFailedSince = Long.MAX_VALUE;
+    private final FileTransfer mFileTransfer;
+    private int mFileCount;
+    private final SortedFileList mFiles = new SortedFileList();
     private boolean mInterrupted;
-    private final OperationListener mListener;
+    private final BatchingOperationListener mListener;
+    private boolean mLocatable = true;
+    private ChecksumManifest mManifest;
+    private final OperationMetrics mMetrics = new OperationMetrics();
+    private Plan mPlan;
     private final Profile mProfile;
+    private boolean mResume;
+    private RunJournal mRunJournal;
 
     public Operation(OperationListener operationListener, Profile profile) {
-        mListener = operationListener;
+        this(operationListener, profile, new CancellationToken());
+    }
+
+    public Operation(OperationListener operationListener, Profile profile, CancellationToken cancellationToken) {
+        this(operationListener, profile, cancellationToken, new Throttle(profile.getBandwidthLimit(), profile.getFileRateLimit()));
+    }
+
+    /**
+     * @param operationListener
+     * @param profile
+     * @param cancellationToken
+     * @param throttle limits the transfers, may be adjusted while running
+     */
+    public Operation(OperationListener operationListener, Profile profile, CancellationToken cancellationToken, Throttle throttle) {
+        mListener = new BatchingOperationListener(operationListener);
         mProfile = profile;
+        mCancellationToken = cancellationToken;
+        mDestinationIndex = new DestinationIndex(profile.isDryRun(), mMetrics);
+        mFileTransfer = new FileTransfer(mMetrics);
+        mFileTransfer.setThrottle(throttle);
         mBundle = SystemHelper.getBundle(Operation.class, "Bundle");
     }
 
+    /**
+     * Continue the interrupted run recorded in the journal of the profile,
+     * skipping the files it already transferred. Only named profiles have a
+     * journal.
+     *
+     * @param resume
+     */
+    public void setResume(boolean resume) {
+        mResume = resume;
+    }
+
     public void start() {
+        if (mResume && StringUtils.isBlank(mProfile.getName())) {
+            mListener.onOperationFailed(mBundle.getString("invalid_journal"));
+            mListener.close();
+            return;
+        }
+
+        //unnamed profiles would share one high-water mark
+        if (mProfile.isIncremental() && StringUtils.isBlank(mProfile.getName())) {
+            mListener.onOperationFailed(mBundle.getString("invalid_incremental"));
+            mListener.close();
+            return;
+        }
+
         long startTime = System.currentTimeMillis();
 
         Date date = new Date(startTime);
@@ -75,99 +160,143 @@ public class Operation {
         mListener.onOperationProcessingStarted();
         mListener.onOperationLog(dateFormat.format(date));
 
-        mInterrupted = !generateFileList();
         String status;
+        List<File> sourceDirs = mProfile.getSourceDirs();
+        if (mProfile.getDateSource() == TbDateSource.EXIF_ORIGINAL) {
+            mExifDateCache.load();
+        }
+        if (mProfile.isDeduplicate()) {
+            mDigestCache.load();
+        }
+
+        if (!mProfile.isDryRun() && StringUtils.isNotBlank(mProfile.getName())) {
+            openRunJournal();
+        }
+
+        if (!mProfile.isDryRun() && mProfile.isVerify()) {
+            mManifest = new ChecksumManifest(startTime);
+            mFileTransfer.setManifest(mManifest);
+        }
+
+        if (mProfile.isDryRun() && mProfile.getPlanFile() != null) {
+            try {
+                mPlan = Plan.create(mProfile.getPlanFile());
+            } catch (IOException ex) {
+                mListener.onOperationLog(ex.getLocalizedMessage());
+            }
+        }
 
-        if (!mInterrupted && !mFiles.isEmpty()) {
-            mListener.onOperationLog(String.format(mBundle.getString("found_count"), mFiles.size()));
+        IncrementalJournal journal = null;
+        if (mProfile.isIncremental()) {
+            journal = new IncrementalJournal(mProfile);
+            if (journal.isIncomplete()) {
+                mListener.onOperationLog(mBundle.getString("incremental_incomplete"));
+            }
+
+            mChangedSince = journal.getHighWaterMark();
+            if (mChangedSince > 0) {
+                mListener.onOperationLog(String.format(mBundle.getString("incremental_since"), dateFormat.format(new Date(mChangedSince))));
+            }
+
+            if (!mProfile.isDryRun()) {
+                try {
+                    journal.start(startTime);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, null, ex);
+                }
+            }
+        }
+
+        if (mProfile.isStreaming() && sourceDirs.stream().allMatch(File::isDirectory)) {
             mListener.onOperationLog("");
             status = Dict.PROCESSING.toString();
             mListener.onOperationLog(status);
 
-            int progress = 0;
-            SimpleDateFormat simpleDateFormat = mProfile.getDateFormat();
-            for (File sourceFile : mFiles) {
-                try {
-                    try {
-                        TimeUnit.MILLISECONDS.sleep(1);
-                    } catch (InterruptedException ex) {
-                        mInterrupted = true;
-                        break;
-                    }
+            //sequential scanners keep the discovery order, and with it the layout, independent of timing
+            List<ScanQueue> scanQueues = new ArrayList<>();
+            for (File sourceDir : sourceDirs) {
+                ScanQueue scanQueue = new ScanQueue(createDirectoryScanner(1), sourceDir.toPath(), STREAM_CAPACITY);
+                scanQueue.start();
+                scanQueues.add(scanQueue);
+            }
 
-                    String fileDate = simpleDateFormat.format(getDate(sourceFile));
-                    File destDir = new File(mProfile.getDestDir(), fileDate);
+            IntSupplier discovered = () -> scanQueues.stream().mapToInt(ScanQueue::getDiscovered).sum();
+            try {
+                process(new RoundRobinIterator<>(scanQueues), discovered);
+            } finally {
+                scanQueues.forEach(ScanQueue::close);
+            }
 
-                    if (destDir.isFile()) {
-                        mListener.onOperationLog(String.format(Dict.Dialog.ERROR_DEST_DIR_IS_FILE.toString(), destDir.getAbsolutePath()));
-                        break;
-                    } else if (!destDir.exists() && !mProfile.isDryRun()) {
-                        FileUtils.forceMkdir(destDir);
-                    }
+            //a scan that ended early leaves files behind, as a failed file list does
+            mInterrupted = mInterrupted || mCancellationToken.isCancelled() || !scanQueues.stream().allMatch(ScanQueue::isCompleted);
+            mFileCount = discovered.getAsInt();
+            if (!mInterrupted && mFileCount == 0) {
+                mListener.onOperationLog(Dict.FILELIST_EMPTY.toString());
+            }
+        } else {
+            mInterrupted = !generateFileList();
+            mFileCount = mFiles.size();
 
-                    String destFilename = sourceFile.getName();
-                    String base = FilenameUtils.getBaseName(destFilename);
-                    String ext = FilenameUtils.getExtension(destFilename);
-                    TbNameCase caseBase = mProfile.getCaseBase();
-                    TbNameCase caseExt = mProfile.getCaseExt();
-
-                    if (caseBase != TbNameCase.UNCHANGED || caseExt != TbNameCase.UNCHANGED) {
-                        if (caseBase == TbNameCase.LOWER) {
-                            base = base.toLowerCase();
-                        } else if (caseBase == TbNameCase.UPPER) {
-                            base = base.toUpperCase();
-                        }
+            if (!mInterrupted && !mFiles.isEmpty()) {
+                mListener.onOperationLog(String.format(mBundle.getString("found_count"), mFiles.size()));
+                if (mFiles.getRunCount() > 0) {
+                    mListener.onOperationLog(String.format(mBundle.getString("spilled_count"), mFiles.getRunCount()));
+                }
+                mListener.onOperationLog("");
+                status = Dict.PROCESSING.toString();
+                mListener.onOperationLog(status);
 
-                        if (caseExt == TbNameCase.LOWER) {
-                            ext = ext.toLowerCase();
-                        } else if (caseBase == TbNameCase.UPPER) {
-                            ext = ext.toUpperCase();
-                        }
+                try {
+                    process(mFiles.iterator(), mFiles::size);
+                } catch (IOException | UncheckedIOException ex) {
+                    LOGGER.log(Level.SEVERE, null, ex);
+                    mListener.onOperationLog(ex.getLocalizedMessage());
+                    mInterrupted = true;
+                }
+            }
 
-                        if (base.length() == 0) {
-                            destFilename = String.format(".%s", ext);
-                        } else if (ext.length() == 0) {
-                            destFilename = base;
-                        } else {
-                            destFilename = String.format("%s.%s", base, ext);
-                        }
-                    }
+            mFiles.close();
+        }
 
-                    File destFile = new File(destDir, destFilename);
-                    String log;
-                    if (destFile.exists() && !mProfile.isReplaceExisting()) {
-                        log = String.format(Dict.Dialog.ERROR_DEST_FILE_EXISTS.toString(), destFile.getAbsolutePath());
-                    } else {
-                        Command command = mProfile.getCommand();
-                        String cmd = command == Command.COPY ? "cp" : "mv";
-                        log = String.format("%s %s  %s", cmd, sourceFile.getAbsolutePath(), destFile.toString());
-
-                        if (destDir.canWrite()) {
-                            if (!mProfile.isDryRun()) {
-                                if (command == Command.COPY) {
-                                    FileUtils.copyFile(sourceFile, destFile);
-                                } else if (command == Command.MOVE) {
-                                    if (File.listRoots().length > 1 || destFile.exists()) {
-                                        FileUtils.copyFile(sourceFile, destFile);
-                                        FileUtils.deleteQuietly(sourceFile);
-                                    } else {
-                                        FileUtils.moveFile(sourceFile, destFile);
-                                    }
-                                }
-                            }
-                        } else if (!mProfile.isDryRun()) {
-                            log = Dict.Dialog.ERROR_DEST_CANT_WRITE.toString();
-                        }
-                    }
+        try {
+            mExifDateCache.save();
+            mDigestCache.save();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, null, ex);
+        }
+
+        if (mPlan != null) {
+            try {
+                mPlan.close();
+                mListener.onOperationLog(String.format(mBundle.getString("plan_written"), mProfile.getPlanFile().getAbsolutePath()));
+            } catch (IOException ex) {
+                mListener.onOperationLog(ex.getLocalizedMessage());
+            }
+        }
+
+        if (mManifest != null) {
+            try {
+                mManifest.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, null, ex);
+                mListener.onOperationLog(ex.getLocalizedMessage());
+            }
+        }
 
-                    mListener.onOperationLog(getMessage(log));
-                } catch (IOException | ImageProcessingException | NullPointerException ex) {
-                    mListener.onOperationLog(getMessage(ex.getLocalizedMessage()));
+        if (mRunJournal != null) {
+            try {
+                if (mInterrupted) {
+                    mRunJournal.close();
+                } else {
+                    mRunJournal.end();
                 }
-                mListener.onOperationProgress(++progress, mFiles.size());
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, null, ex);
             }
         }
 
+        mListener.onOperationMetrics(mMetrics);
+
         if (mInterrupted) {
             status = Dict.TASK_ABORTED.toString();
             mListener.onOperationLog("\n" + status);
@@ -180,9 +309,17 @@ public class Operation {
             long min = TimeUnit.MILLISECONDS.toMinutes(millis);
             long sec = TimeUnit.MILLISECONDS.toSeconds(millis) - TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(millis));
             status = String.format("%s (%d %s, %d %s)", Dict.TASK_COMPLETED.toString(), min, Dict.TIME_MIN.toString(), sec, Dict.TIME_SEC.toString());
-            mListener.onOperationFinished(status, mFiles.size());
+            mListener.onOperationFinished(status, mFileCount);
 
             if (!mProfile.isDryRun()) {
+                if (journal != null) {
+                    try {
+                        journal.complete(Math.min(startTime, mFailedSince));
+                    } catch (IOException ex) {
+                        LOGGER.log(Level.SEVERE, null, ex);
+                    }
+                }
+
                 mProfile.setLastRun(System.currentTimeMillis());
                 try {
                     ProfileManager.getInstance().save();
@@ -191,99 +328,753 @@ public class Operation {
                 }
             }
         }
+
+        mListener.close();
     }
 
+    private boolean commit(Task task, ExecutorService executor, HashMap<File, Task> claimed) throws InterruptedException {
+        File sourceFile = task.mSourceRecord.getFile();
+        Command command = mProfile.getCommand();
+        ArrayList<String> log = new ArrayList<>();
+
+        try {
+            Date date = task.mDateFuture.get();
+            ArrayList<File> destDirs = new ArrayList<>();
+            ArrayList<DestinationIndex.Directory> directories = new ArrayList<>();
+            for (Destination destination : mDestinations) {
+                File destDir = destination.mDateDirectoryResolver.getDirectory(date.getTime());
+                DestinationIndex.Directory directory = mDestinationIndex.getDirectory(destDir);
+                if (directory.isFile()) {
+                    task.mLog = String.format(Dict.Dialog.ERROR_DEST_DIR_IS_FILE.toString(), destDir.getAbsolutePath());
+                    task.mCounted = false;
+                    mFailedSince = Math.min(mFailedSince, mChangedSince);
+                    mMetrics.addError();
+                    return false;
+                }
+                destDirs.add(destDir);
+                directories.add(directory);
+            }
+
+            ArrayList<DuplicateIndex> duplicateIndexes = new ArrayList<>();
+            boolean accepted = false;
+            for (int i = 0; i < mDestinations.size(); i++) {
+                DuplicateIndex duplicateIndex = mDestinations.get(i).mDuplicateIndex;
+                File destDir = destDirs.get(i);
+                DestinationIndex.Directory directory = directories.get(i);
+
+                if (mProfile.isDeduplicate()) {
+                    duplicateIndex.indexDirectory(destDir);
+                    File duplicate = findDuplicate(task.mSourceRecord, duplicateIndex, executor);
+                    if (duplicate != null) {
+                        log.add(getMessage(String.format(mBundle.getString("duplicate_of"), sourceFile.getAbsolutePath(), duplicate.getAbsolutePath())));
+                        continue;
+                    }
+                }
+
+                File namedFile = new File(destDir, getDestFilename(sourceFile));
+                Task previous = claimed.get(namedFile);
+                boolean pending = false;
+                if (previous != null) {
+                    if (previous.mTransferFuture instanceof DeferredTransfer && !previous.mTransferFuture.isDone() && !mProfile.isReplaceExisting()) {
+                        pending = true; //exists once its deferred transfer has run
+                    } else {
+                        try {
+                            previous.mTransferFuture.get();
+                        } catch (ExecutionException ex) {
+                            //nvm, logged by its own task
+                        }
+                    }
+                }
+
+                boolean exists = pending || mDestinationIndex.exists(namedFile);
+                if (exists && mProfile.isDeduplicate() && !mProfile.isReplaceExisting()) {
+                    namedFile = getUniqueFile(namedFile, claimed);
+                    exists = false;
+                }
+
+                File destFile = namedFile;
+                if (exists && !mProfile.isReplaceExisting()) {
+                    log.add(getMessage(String.format(Dict.Dialog.ERROR_DEST_FILE_EXISTS.toString(), destFile.getAbsolutePath())));
+                    mMetrics.addError();
+                } else if (!directory.isWritable() && !mProfile.isDryRun()) {
+                    log.add(getMessage(Dict.Dialog.ERROR_DEST_CANT_WRITE.toString()));
+                    task.mFailed = true;
+                    mMetrics.addError();
+                } else {
+                    log.add(getMessage(String.format("%s %s  %s", command.getShellName(), sourceFile.getAbsolutePath(), destFile.toString())));
+                    accepted = true;
+
+                    if (mProfile.isDryRun()) {
+                        mDestinationIndex.addPlanned(destFile);
+                        if (mProfile.isDeduplicate()) {
+                            duplicateIndex.add(task.mSourceRecord, null);
+                        }
+                    } else {
+                        mDestinationIndex.add(destFile);
+                        claimed.put(destFile, task);
+                        task.mDestFiles.add(destFile);
+                        duplicateIndexes.add(duplicateIndex);
+                    }
+
+                    if (mPlan != null) {
+                        mPlan.add(sourceFile, destFile, task.mSourceRecord.getSize(), date.getTime());
+                    }
+                }
+            }
+
+            if (accepted && mProfile.isDryRun()) {
+                mMetrics.addFile();
+            }
+
+            if (!task.mDestFiles.isEmpty()) {
+                List<File> destFiles = task.mDestFiles;
+                long[] journalIds = new long[destFiles.size()];
+                if (mRunJournal != null) {
+                    for (int i = 0; i < journalIds.length; i++) {
+                        journalIds[i] = mRunJournal.planned(sourceFile, destFiles.get(i));
+                    }
+                }
+
+                Callable<Void> transfer = () -> {
+                    if (mRunJournal != null && command == Command.MOVE) {
+                        mRunJournal.awaitDurable(journalIds[journalIds.length - 1]);
+                    }
+                    task.mFailures = mFileTransfer.transfer(command, task.mSourceRecord, destFiles);
+                    mMetrics.addFile();
+                    mMetrics.addBytes(task.mSourceRecord.getSize());
+                    if (mRunJournal != null) {
+                        for (int i = 0; i < journalIds.length; i++) {
+                            if (!task.mFailures.containsKey(destFiles.get(i))) {
+                                mRunJournal.completed(journalIds[i]);
+                            }
+                        }
+                    }
+                    return null;
+                };
+
+                if (mProfile.isInodeOrder()) {
+                    task.mTransferFuture = new DeferredTransfer(transfer);
+                } else {
+                    task.mTransferFuture = submitTransfer(executor, task.mSourceRecord, destFiles, transfer);
+                }
+
+                if (mProfile.isDeduplicate()) {
+                    FileRecord sourceRecord = task.mSourceRecord;
+                    for (int i = 0; i < destFiles.size(); i++) {
+                        duplicateIndexes.get(i).add(new FileRecord(destFiles.get(i), sourceRecord.getSize(), sourceRecord.getLastModified(), sourceRecord.getCreated()), task.mTransferFuture);
+                    }
+                }
+            }
+
+            task.mLog = String.join("\n", log);
+        } catch (ExecutionException ex) {
+            task.mLog = getMessage(ex.getCause().getLocalizedMessage());
+            task.mFailed = ex.getCause() instanceof IOException;
+            mMetrics.addError();
+        } catch (IOException | NullPointerException ex) {
+            task.mLog = getMessage(ex.getLocalizedMessage());
+            task.mFailed = true;
+            mMetrics.addError();
+        }
+
+        return true;
+    }
+
+    private DirectoryScanner createDirectoryScanner(int parallelism) {
+        DirectoryScanner directoryScanner = new DirectoryScanner(mProfile.getPathMatcher(), mProfile.isFollowLinks(), mProfile.isRecursive(), parallelism, this);
+        directoryScanner.setFilter(this::isIncluded);
+
+        return directoryScanner;
+    }
+
+    /**
+     * Returns a file in the destination, or on its way there, with the same
+     * content as sourceRecord. Only files of equal size are hashed.
+     */
+    private File findDuplicate(FileRecord sourceRecord, DuplicateIndex duplicateIndex, ExecutorService executor) throws InterruptedException, ExecutionException {
+        List<DuplicateIndex.Candidate> candidates = duplicateIndex.getCandidates(sourceRecord.getSize());
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        Future<byte[]> sourceDigest = submit(executor, () -> mDigestCache.digest(sourceRecord));
+        ArrayList<Future<byte[]>> candidateDigests = new ArrayList<>();
+        for (DuplicateIndex.Candidate candidate : candidates) {
+            candidateDigests.add(submit(executor, () -> {
+                candidate.await();
+                return mDigestCache.digest(candidate.getFileRecord());
+            }));
+        }
+
+        byte[] digest = sourceDigest.get();
+        for (int i = 0; i < candidates.size(); i++) {
+            try {
+                if (MessageDigest.isEqual(digest, candidateDigests.get(i).get())) {
+                    return candidates.get(i).getFileRecord().getFile();
+                }
+            } catch (ExecutionException ex) {
+                //nvm, a failed or vanished candidate is no duplicate
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Scans all sources concurrently, the files of each source are sorted and
+     * the sources are kept in the order of the profile. Large lists spill to
+     * disk, see {@link SortedFileList}.
+     */
     private boolean generateFileList() {
         mListener.onOperationLog("");
         mListener.onOperationLog(Dict.GENERATING_FILELIST.toString());
-        PathMatcher pathMatcher = mProfile.getPathMatcher();
 
-        EnumSet<FileVisitOption> fileVisitOptions = EnumSet.noneOf(FileVisitOption.class);
-        if (mProfile.isFollowLinks()) {
-            fileVisitOptions = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
+        List<File> sourceDirs = mProfile.getSourceDirs();
+        ExecutorService executor = null;
+        if (sourceDirs.size() > 1) {
+            executor = Executors.newFixedThreadPool(sourceDirs.size(), new WorkerThreadFactory());
         }
 
-        File file = mProfile.getSourceDir();
-        if (file.isDirectory()) {
-            FileVisitor fileVisitor = new FileVisitor(pathMatcher, mFiles, this);
-            try {
-                if (mProfile.isRecursive()) {
-                    Files.walkFileTree(file.toPath(), fileVisitOptions, Integer.MAX_VALUE, fileVisitor);
+        List<Future<Boolean>> scans = new ArrayList<>();
+        for (int i = 0; i < sourceDirs.size(); i++) {
+            File sourceDir = sourceDirs.get(i);
+            int source = i;
+            scans.add(submit(executor, () -> scanSource(sourceDir, fileRecord -> mFiles.add(source, fileRecord))));
+        }
+
+        try {
+            for (Future<Boolean> scan : scans) {
+                try {
+                    if (!scan.get()) {
+                        return false;
+                    }
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof UncheckedIOException) {
+                        LOGGER.log(Level.SEVERE, null, ex.getCause());
+                        mListener.onOperationLog(ex.getCause().getLocalizedMessage());
+                        return false;
+                    }
+                    Xlog.e(getClass(), ex.getCause().getLocalizedMessage());
+                }
+            }
+        } catch (InterruptedException ex) {
+            return false;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        if (mFiles.isEmpty()) {
+            mListener.onOperationLog(Dict.FILELIST_EMPTY.toString());
+        }
+
+        return true;
+    }
+
+    private String getMessage(String message) {
+        if (mProfile.isDryRun()) {
+            message = String.format("dry-run: %s", message);
+        }
+
+        return StringUtils.defaultString(message, "");
+    }
+
+    private File getUniqueFile(File destFile, HashMap<File, Task> claimed) {
+        String base = FilenameUtils.getBaseName(destFile.getName());
+        String ext = FilenameUtils.getExtension(destFile.getName());
+
+        for (int i = 1;; i++) {
+            String name = ext.length() == 0 ? String.format("%s-%d", base, i) : String.format("%s-%d.%s", base, i, ext);
+            File file = new File(destFile.getParentFile(), name);
+            if (!claimed.containsKey(file) && !mDestinationIndex.exists(file)) {
+                return file;
+            }
+        }
+    }
+
+    private boolean isIncluded(FileRecord fileRecord) {
+        return fileRecord.isChangedSince(mChangedSince) && !mCompletedSources.contains(fileRecord.getFile());
+    }
+
+    /**
+     * Takes the device and inode of the source of task from the file key of
+     * the scan, or reads them where the file system offers them. Tasks without
+     * stay in path order.
+     */
+    private void locate(Task task) {
+        Object fileKey = task.mSourceRecord.getFileKey();
+        if (fileKey != null) {
+            Matcher matcher = FILE_KEY.matcher(fileKey.toString());
+            if (matcher.matches()) {
+                task.mDevice = Long.parseUnsignedLong(matcher.group(1), 16);
+                task.mInode = Long.parseLong(matcher.group(2));
+                return;
+            }
+        }
+
+        if (!mLocatable) {
+            return;
+        }
+
+        try {
+            Map<String, Object> attributes = Files.readAttributes(task.mSourceRecord.getFile().toPath(), "unix:dev,ino");
+            task.mDevice = ((Number) attributes.get("dev")).longValue();
+            task.mInode = ((Number) attributes.get("ino")).longValue();
+        } catch (UnsupportedOperationException | IllegalArgumentException ex) {
+            mLocatable = false;
+        } catch (IOException ex) {
+            //nvm, reported when read
+        }
+    }
+
+    private void openRunJournal() {
+        mRunJournal = new RunJournal(mProfile);
+
+        try {
+            if (mResume) {
+                int pending = 0;
+                HashSet<List<File>> incomplete = new HashSet<>();
+                for (RunJournal.Entry entry : mRunJournal.resume()) {
+                    List<File> transfer = Arrays.asList(entry.getSource(), entry.getDest());
+                    if (entry.isCompleted()) {
+                        mCompletedSources.add(entry.getSource());
+                        incomplete.remove(transfer);
+                    } else {
+                        incomplete.add(transfer);
+                    }
+                }
+
+                for (List<File> transfer : incomplete) {
+                    File source = transfer.get(0);
+                    File dest = transfer.get(1);
+                    mCompletedSources.remove(source); //not yet in all of its destinations
+                    if (source.exists() && dest.isFile()) {
+                        Files.delete(dest.toPath());
+                        pending++;
+                    }
+                }
+                mListener.onOperationLog(String.format(mBundle.getString("resume_count"), mCompletedSources.size(), pending));
+            } else {
+                mRunJournal.begin(mProfile.getCommand());
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, null, ex);
+            mListener.onOperationLog(ex.getLocalizedMessage());
+            mRunJournal = null;
+        }
+    }
+
+    /**
+     * Runs a bounded window of tasks, dates and transfers run concurrently
+     * while the tasks are committed, and logged, in iteration order.
+     * <p>
+     * In inode order tasks are accepted in batches of {@link #LOCALITY_BATCH}.
+     * Their dates are read and their transfers run in device and inode order,
+     * but they are still committed in iteration order, so the destination
+     * names are the same as without it. The next batch is accepted, and dated,
+     * while the transfers of the previous one run.
+     */
+    private void process(Iterator<FileRecord> iterator, IntSupplier fileCount) {
+        final int threads = mProfile.getThreads();
+        final boolean locality = mProfile.isInodeOrder();
+        final int window = locality ? LOCALITY_BATCH : threads == 1 ? 1 : threads * WINDOW_PER_THREAD;
+        ExecutorService executor = null;
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+            if (!mProfile.isDryRun()) {
+                mDeviceScheduler = new DeviceScheduler(mFileTransfer, threads, new WorkerThreadFactory());
+            }
+        }
+
+        mDestinations.clear();
+        for (File destDir : mProfile.getDestDirs()) {
+            mDestinations.add(new Destination(new DateDirectoryResolver(destDir, mProfile.getDatePattern(), mProfile.getDateFormatter())));
+        }
+        ArrayDeque<Task> dating = new ArrayDeque<>();
+        ArrayDeque<Task> transferring = new ArrayDeque<>();
+        ArrayList<Task> batch = new ArrayList<>();
+        ArrayList<Task> located = new ArrayList<>();
+        HashMap<File, Task> claimed = new HashMap<>();
+        boolean accepting = true;
+        int progress = 0;
+        long lastMetrics = System.nanoTime();
+
+        try {
+            while (true) {
+                //a batch is accepted as a whole, while at most the previous one transfers
+                int acceptable = locality ? (dating.isEmpty() && transferring.size() <= LOCALITY_BATCH ? LOCALITY_BATCH : 0) : window - transferring.size();
+                while (accepting && iterator.hasNext() && dating.size() < acceptable) {
+                    if (!mCancellationToken.proceed()) {
+                        throw new CancellationException();
+                    }
+
+                    FileRecord sourceRecord = iterator.next();
+                    Task task = new Task(sourceRecord);
+                    if (locality) {
+                        locate(task);
+                        batch.add(task);
+                    } else {
+                        task.mDateFuture = submit(executor, () -> getDate(sourceRecord));
+                    }
+                    dating.add(task);
+                }
+
+                if (!batch.isEmpty()) {
+                    batch.sort(LOCALITY_ORDER);
+                    for (Task task : batch) {
+                        task.mDateFuture = submit(executor, () -> getDate(task.mSourceRecord));
+                    }
+                    located.addAll(batch);
+                    batch.clear();
+                }
+
+                if (!dating.isEmpty()) {
+                    Task task = dating.poll();
+                    accepting = commit(task, executor, claimed);
+                    transferring.add(task);
+
+                    if (!accepting) {
+                        dating.forEach((t) -> {
+                            t.mDateFuture.cancel(false);
+                        });
+                        dating.clear();
+                    }
+
+                    if (locality && dating.isEmpty()) {
+                        releaseTransfers(located, executor);
+                        located.clear();
+                    }
+                }
+
+                boolean feedable = accepting && iterator.hasNext();
+                if (dating.isEmpty() && transferring.isEmpty() && !feedable) {
+                    break;
+                }
+
+                while (!transferring.isEmpty()) {
+                    boolean full = locality ? transferring.size() > LOCALITY_BATCH : transferring.size() >= window;
+                    boolean blocked = dating.isEmpty() && (!feedable || full);
+                    if (!blocked && !transferring.peek().isDone()) {
+                        break;
+                    }
+
+                    Task task = transferring.poll();
+                    try {
+                        task.await();
+                    } catch (ExecutionException ex) {
+                        task.mLog = getMessage(ex.getCause().getLocalizedMessage());
+                        task.mFailed = true;
+                        mMetrics.addError();
+                    }
+
+                    for (Map.Entry<File, IOException> failure : task.mFailures.entrySet()) {
+                        task.mLog += "\n" + getMessage(String.format(mBundle.getString("dest_failed"), failure.getKey().getAbsolutePath(), failure.getValue().getLocalizedMessage()));
+                        task.mFailed = true;
+                        mMetrics.addError();
+                    }
+
+                    if (task.mFailed) {
+                        FileRecord sourceRecord = task.mSourceRecord;
+                        mFailedSince = Math.min(mFailedSince, Math.min(sourceRecord.getLastModified(), sourceRecord.getCreated()));
+                    }
+
+                    for (File destFile : task.mDestFiles) {
+                        if (claimed.get(destFile) == task) {
+                            claimed.remove(destFile);
+                        }
+                    }
+
+                    mListener.onOperationLog(task.mLog);
+                    if (task.mCounted) {
+                        mListener.onOperationProgress(++progress, fileCount.getAsInt());
+                    }
+
+                    if (System.nanoTime() - lastMetrics >= METRICS_INTERVAL) {
+                        mListener.onOperationMetrics(mMetrics);
+                        lastMetrics = System.nanoTime();
+                    }
+                }
+            }
+        } catch (InterruptedException | CancellationException ex) {
+            mInterrupted = true;
+        } finally {
+            if (executor != null) {
+                if (mInterrupted) {
+                    executor.shutdownNow();
                 } else {
-                    Files.walkFileTree(file.toPath(), fileVisitOptions, 1, fileVisitor);
+                    executor.shutdown();
                 }
+            }
 
-                if (fileVisitor.isInterrupted()) {
-                    return false;
+            if (mDeviceScheduler != null) {
+                if (mInterrupted) {
+                    mDeviceScheduler.shutdownNow();
+                } else {
+                    mDeviceScheduler.shutdown();
+                    mDeviceScheduler.getSummary().forEach(mListener::onOperationLog);
+                }
+            }
+        }
+    }
+
+    private long readExifDate(File sourceFile) throws IOException {
+        Date fastDate = ExifDateReader.read(sourceFile);
+        if (fastDate != null) {
+            return fastDate.getTime();
+        }
+
+        Directory directory = null;
+
+        try {
+            Metadata metadata = ImageMetadataReader.readMetadata(sourceFile);
+            directory = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
+            Date date = directory.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL);
+
+            return date == null ? ExifDateCache.NOT_FOUND : date.getTime();
+        } catch (NullPointerException | ImageProcessingException ex) {
+            return directory == null ? ExifDateCache.NOT_FOUND : ExifDateCache.NOT_SUPPORTED;
+        }
+    }
+
+    /**
+     * Submits the deferred transfers of a committed batch in device and inode
+     * order.
+     */
+    private void releaseTransfers(Collection<Task> tasks, ExecutorService executor) {
+        ArrayList<Task> located = new ArrayList<>(tasks);
+        located.sort(LOCALITY_ORDER);
+
+        for (Task task : located) {
+            if (task.mTransferFuture instanceof DeferredTransfer) {
+                DeferredTransfer transfer = (DeferredTransfer) task.mTransferFuture;
+                submitTransfer(executor, task.mSourceRecord, task.mDestFiles, () -> {
+                    transfer.run();
+                    return null;
+                });
+            }
+        }
+    }
+
+    private boolean scanSource(File sourceDir, Consumer<FileRecord> consumer) {
+        if (sourceDir.isDirectory()) {
+            return createDirectoryScanner(mProfile.getThreads()).scan(sourceDir.toPath(), consumer);
+        } else if (sourceDir.isFile() && mProfile.getPathMatcher().matches(sourceDir.toPath().getFileName())) {
+            try {
+                FileRecord fileRecord = DirectoryScanner.getFileRecord(sourceDir);
+                if (isIncluded(fileRecord)) {
+                    consumer.accept(fileRecord);
                 }
             } catch (IOException ex) {
                 Xlog.e(getClass(), ex.getLocalizedMessage());
             }
-        } else if (file.isFile() && pathMatcher.matches(file.toPath().getFileName())) {
-            mFiles.add(file);
         }
 
-        if (mFiles.isEmpty()) {
-            mListener.onOperationLog(Dict.FILELIST_EMPTY.toString());
+        return true;
+    }
+
+    private <T> Future<T> submit(ExecutorService executor, Callable<T> callable) {
+        if (executor == null) {
+            FutureTask<T> futureTask = new FutureTask<>(callable);
+            futureTask.run();
+
+            return futureTask;
         } else {
-            Collections.sort(mFiles);
+            return executor.submit(callable);
         }
+    }
 
-        return true;
+    /**
+     * Transfers go to the queue of their devices when running concurrently.
+     */
+    private <T> Future<T> submitTransfer(ExecutorService executor, FileRecord sourceRecord, List<File> destFiles, Callable<T> callable) {
+        if (mDeviceScheduler == null) {
+            return submit(executor, callable);
+        } else {
+            return mDeviceScheduler.submit(sourceRecord, destFiles, callable);
+        }
+    }
+
+    CancellationToken getCancellationToken() {
+        return mCancellationToken;
     }
 
-    private Date getDate(File sourceFile) throws IOException, ImageProcessingException {
+    Date getDate(FileRecord sourceRecord) throws IOException, ImageProcessingException {
         Date date = new Date(System.currentTimeMillis());
         TbDateSource dateSource = mProfile.getDateSource();
+        File sourceFile = sourceRecord.getFile();
 
         if (dateSource == TbDateSource.FILE_CREATED) {
-            BasicFileAttributes attr = Files.readAttributes(sourceFile.toPath(), BasicFileAttributes.class);
-            date = new Date(attr.creationTime().toMillis());
+            date = new Date(sourceRecord.getCreated());
         } else if (dateSource == TbDateSource.FILE_MODIFIED) {
-            BasicFileAttributes attr = Files.readAttributes(sourceFile.toPath(), BasicFileAttributes.class);
-            date = new Date(attr.lastModifiedTime().toMillis());
+            date = new Date(sourceRecord.getLastModified());
         } else if (dateSource == TbDateSource.EXIF_ORIGINAL) {
-            Metadata metadata;
-            Directory directory = null;
-
-            try {
-                metadata = ImageMetadataReader.readMetadata(sourceFile);
-                directory = metadata.getFirstDirectoryOfType(ExifSubIFDDirectory.class);
-                date = directory.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL);
-            } catch (NullPointerException | ImageProcessingException ex) {
-                String message;
-                if (directory == null) {
-                    message = String.format(Dict.Dialog.ERROR_EXIF_NOT_FOUND.toString(), sourceFile.getAbsolutePath());
-                } else {
-                    message = String.format(Dict.Dialog.ERROR_FILE_FORMAT_NOT_SUPPORTED.toString(), sourceFile.getAbsolutePath());
-                }
+            long start = System.nanoTime();
+            long exifDate = mExifDateCache.get(sourceRecord);
+            if (exifDate == ExifDateCache.MISS) {
+                exifDate = readExifDate(sourceFile);
+                mExifDateCache.put(sourceRecord, exifDate);
+            }
+            mMetrics.recordSince(OperationMetrics.Phase.DATE, start);
 
-                throw new ImageProcessingException(message);
+            if (exifDate == ExifDateCache.NOT_FOUND) {
+                throw new ImageProcessingException(String.format(Dict.Dialog.ERROR_EXIF_NOT_FOUND.toString(), sourceFile.getAbsolutePath()));
+            } else if (exifDate == ExifDateCache.NOT_SUPPORTED) {
+                throw new ImageProcessingException(String.format(Dict.Dialog.ERROR_FILE_FORMAT_NOT_SUPPORTED.toString(), sourceFile.getAbsolutePath()));
             }
+
+            date = new Date(exifDate);
         }
 
         return date;
     }
 
-    private String getMessage(String message) {
-        if (mProfile.isDryRun()) {
-            message = String.format("dry-run: %s", message);
+    String getDestFilename(File sourceFile) {
+        String destFilename = sourceFile.getName();
+        String base = FilenameUtils.getBaseName(destFilename);
+        String ext = FilenameUtils.getExtension(destFilename);
+        TbNameCase caseBase = mProfile.getCaseBase();
+        TbNameCase caseExt = mProfile.getCaseExt();
+
+        if (caseBase != TbNameCase.UNCHANGED || caseExt != TbNameCase.UNCHANGED) {
+            if (caseBase == TbNameCase.LOWER) {
+                base = base.toLowerCase();
+            } else if (caseBase == TbNameCase.UPPER) {
+                base = base.toUpperCase();
+            }
+
+            if (caseExt == TbNameCase.LOWER) {
+                ext = ext.toLowerCase();
+            } else if (caseBase == TbNameCase.UPPER) {
+                ext = ext.toUpperCase();
+            }
+
+            if (base.length() == 0) {
+                destFilename = String.format(".%s", ext);
+            } else if (ext.length() == 0) {
+                destFilename = base;
+            } else {
+                destFilename = String.format("%s.%s", base, ext);
+            }
         }
 
-        return StringUtils.defaultString(message, "");
+        return destFilename;
     }
 
     OperationListener getListener() {
         return mListener;
     }
 
+    OperationMetrics getMetrics() {
+        return mMetrics;
+    }
+
     public enum Command {
 
-        COPY, MOVE;
+        COPY, MOVE, LINK, CLONE;
+
+        /**
+         * @return the shell command used in log messages
+         */
+        public String getShellName() {
+            switch (this) {
+                case MOVE:
+                    return "mv";
+                case LINK:
+                    return "ln";
+                case CLONE:
+                    return "cp --reflink";
+                default:
+                    return "cp";
+            }
+        }
 
         @Override
         public String toString() {
+            if (this == LINK) {
+                return SystemHelper.getBundle(Operation.class, "Bundle").getString("link");
+            }
+
             return Dict.valueOf(name()).toString();
         }
     }
+
+    /**
+     * A transfer that is submitted later, or run by the first thread that
+     * needs its result before that.
+     */
+    private static class DeferredTransfer extends FutureTask<Void> {
+
+        public DeferredTransfer(Callable<Void> callable) {
+            super(callable);
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            run();
+
+            return super.get();
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            run();
+
+            return super.get(timeout, unit);
+        }
+    }
+
+    /**
+     * The state kept per destination root.
+     */
+    private static class Destination {
+
+        private final DateDirectoryResolver mDateDirectoryResolver;
+        private final DuplicateIndex mDuplicateIndex = new DuplicateIndex();
+
+        public Destination(DateDirectoryResolver dateDirectoryResolver) {
+            mDateDirectoryResolver = dateDirectoryResolver;
+        }
+    }
+
+    private static class Task {
+
+        private boolean mCounted = true;
+        private Future<Date> mDateFuture;
+        private final ArrayList<File> mDestFiles = new ArrayList<>();
+        private long mDevice;
+        private boolean mFailed;
+        private Map<File, IOException> mFailures = Collections.emptyMap();
+        private long mInode;
+        private String mLog;
+        private final FileRecord mSourceRecord;
+        private Future<Void> mTransferFuture;
+
+        public Task(FileRecord sourceRecord) {
+            mSourceRecord = sourceRecord;
+        }
+
+        private void await() throws InterruptedException, ExecutionException {
+            if (mTransferFuture != null) {
+                mTransferFuture.get();
+            }
+        }
+
+        private boolean isDone() {
+            return mTransferFuture == null || mTransferFuture.isDone();
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FileByDate-worker-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
 }
@@ -31,6 +31,15 @@ public interface OperationListener {
 
     void onOperationLog(String message);
 
+    /**
+     * Called about once a second while processing and once before the run
+     * ends.
+     *
+     * @param metrics the live metrics of the run
+     */
+    default void onOperationMetrics(OperationMetrics metrics) {
+    }
+
     void onOperationProcessingStarted();
 
     void onOperationProgress(int value, int max);
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.io.FileUtils;
+import se.trixon.almond.util.SystemHelper;
+
+/**
+ * Live throughput counters and per phase latency histograms of one run.
+ * <p>
+ * All methods are thread safe and cheap enough to be called for every file.
+ * Latencies are kept in power of two buckets of microseconds, percentiles are
+ * reported as the upper bound of their bucket.
+ *
+ * @author Patrik Karlström
+ */
+public class OperationMetrics {
+
+    private static final int BUCKETS = 40;
+
+    private final ResourceBundle mBundle = SystemHelper.getBundle(OperationMetrics.class, "Bundle");
+    private final LongAdder mBytes = new LongAdder();
+    private final LongAdder mErrors = new LongAdder();
+    private final LongAdder mFiles = new LongAdder();
+    private final EnumMap<Phase, Histogram> mHistograms = new EnumMap<>(Phase.class);
+    private final long mStartNanos = System.nanoTime();
+
+    public OperationMetrics() {
+        for (Phase phase : Phase.values()) {
+            mHistograms.put(phase, new Histogram());
+        }
+    }
+
+    public void addBytes(long bytes) {
+        mBytes.add(bytes);
+    }
+
+    public void addError() {
+        mErrors.increment();
+    }
+
+    public void addFile() {
+        mFiles.increment();
+    }
+
+    public long getBytes() {
+        return mBytes.sum();
+    }
+
+    public double getBytesPerSecond() {
+        return getBytes() / getElapsedSeconds();
+    }
+
+    public long getCount(Phase phase) {
+        return mHistograms.get(phase).mCount.sum();
+    }
+
+    public double getElapsedSeconds() {
+        return Math.max(1, System.nanoTime() - mStartNanos) / 1E9;
+    }
+
+    public long getErrors() {
+        return mErrors.sum();
+    }
+
+    public long getFiles() {
+        return mFiles.sum();
+    }
+
+    public double getFilesPerSecond() {
+        return getFiles() / getElapsedSeconds();
+    }
+
+    /**
+     * @param phase
+     * @return the longest recorded latency in ms
+     */
+    public double getMax(Phase phase) {
+        return mHistograms.get(phase).mMax.get() / 1E6;
+    }
+
+    /**
+     * @param phase
+     * @return the mean latency in ms
+     */
+    public double getMean(Phase phase) {
+        Histogram histogram = mHistograms.get(phase);
+        long count = histogram.mCount.sum();
+
+        return count == 0 ? 0 : histogram.mTotal.sum() / 1E6 / count;
+    }
+
+    /**
+     * @param phase
+     * @param percentile 0-100
+     * @return the latency in ms that percentile of the samples stay within
+     */
+    public double getPercentile(Phase phase, double percentile) {
+        Histogram histogram = mHistograms.get(phase);
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += histogram.mBuckets.get(i);
+        }
+
+        long threshold = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram.mBuckets.get(i);
+            if (seen >= threshold && seen > 0) {
+                return Math.min((1L << i) / 1E3, getMax(phase));
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return a human readable summary, one line per entry
+     */
+    public List<String> getSummary() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(mBundle.getString("metrics_throughput"),
+                getFiles(),
+                FileUtils.byteCountToDisplaySize(getBytes()),
+                getElapsedSeconds(),
+                getFilesPerSecond(),
+                FileUtils.byteCountToDisplaySize((long) getBytesPerSecond())));
+
+        for (Phase phase : Phase.values()) {
+            if (getCount(phase) > 0) {
+                lines.add(String.format(mBundle.getString("metrics_phase"),
+                        phase.toString(),
+                        getCount(phase),
+                        getMean(phase),
+                        getPercentile(phase, 50),
+                        getPercentile(phase, 95),
+                        getMax(phase)));
+            }
+        }
+
+        lines.add(String.format(mBundle.getString("metrics_errors"), getErrors()));
+
+        return lines;
+    }
+
+    public void record(Phase phase, long nanos) {
+        mHistograms.get(phase).add(nanos);
+    }
+
+    /**
+     * Records the time passed since startNanos.
+     *
+     * @param phase
+     * @param startNanos a value of {@link System#nanoTime()}
+     */
+    public void recordSince(Phase phase, long startNanos) {
+        record(phase, System.nanoTime() - startNanos);
+    }
+
+    public enum Phase {
+
+        SCAN, DATE, MKDIR, COPY, VERIFY, DELETE;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static class Histogram {
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder mCount = new LongAdder();
+        private final AtomicLong mMax = new AtomicLong();
+        private final LongAdder mTotal = new LongAdder();
+
+        private void add(long nanos) {
+            nanos = Math.max(0, nanos);
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            int bucket = Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros));
+
+            mBuckets.incrementAndGet(bucket);
+            mCount.increment();
+            mTotal.add(nanos);
+            mMax.accumulateAndGet(nanos, Math::max);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A transfer plan written by a dry run, one tab separated line per file:
+ * source, destination, size and date in epoch millis.
+ *
+ * @author Patrik Karlström
+ */
+public class Plan implements AutoCloseable {
+
+    private static final String HEADER = "#filebydate-plan 1";
+
+    private final BufferedWriter mWriter;
+
+    /**
+     * Creates a plan file for writing, replacing any existing file.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static Plan create(File file) throws IOException {
+        return new Plan(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    public static List<Entry> read(File file) throws IOException {
+        ArrayList<Entry> entries = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException(String.format("Not a plan file: %s", file.getAbsolutePath()));
+            }
+
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String[] items = line.split("\t");
+                if (items.length != 4) {
+                    throw new IOException(String.format("%s:%d: invalid entry", file.getAbsolutePath(), lineNumber));
+                }
+
+                try {
+                    entries.add(new Entry(unescape(items[0]), unescape(items[1]), Long.parseLong(items[2]), Long.parseLong(items[3])));
+                } catch (NumberFormatException ex) {
+                    throw new IOException(String.format("%s:%d: invalid entry", file.getAbsolutePath(), lineNumber));
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    private static String escape(String string) {
+        return string.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String unescape(String string) {
+        if (string.indexOf('\\') < 0) {
+            return string;
+        }
+
+        StringBuilder builder = new StringBuilder(string.length());
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '\\' && i + 1 < string.length()) {
+                char next = string.charAt(++i);
+                builder.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private Plan(BufferedWriter writer) throws IOException {
+        mWriter = writer;
+        mWriter.write(HEADER);
+        mWriter.newLine();
+    }
+
+    public synchronized void add(File source, File dest, long size, long date) throws IOException {
+        mWriter.write(escape(source.getPath()));
+        mWriter.write('\t');
+        mWriter.write(escape(dest.getPath()));
+        mWriter.write('\t');
+        mWriter.write(Long.toString(size));
+        mWriter.write('\t');
+        mWriter.write(Long.toString(date));
+        mWriter.newLine();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mWriter.close();
+    }
+
+    public static class Entry {
+
+        private final long mDate;
+        private final String mDest;
+        private final long mSize;
+        private final String mSource;
+
+        public Entry(String source, String dest, long size, long date) {
+            mSource = source;
+            mDest = dest;
+            mSize = size;
+            mDate = date;
+        }
+
+        public long getDate() {
+            return mDate;
+        }
+
+        public File getDest() {
+            return new File(mDest);
+        }
+
+        public String getDestDir() {
+            int index = mDest.lastIndexOf(File.separatorChar);
+
+            return index < 0 ? "" : mDest.substring(0, index);
+        }
+
+        public long getSize() {
+            return mSize;
+        }
+
+        public File getSource() {
+            return new File(mSource);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+import se.trixon.almond.util.Dict;
+import se.trixon.almond.util.SystemHelper;
+import se.trixon.tools.api.CancellationToken;
+import se.trixon.tools.fbd.Operation.Command;
+
+/**
+ * Executes a {@link Plan} written by a dry run, without scanning or date
+ * extraction.
+ * <p>
+ * The entries of a source are transferred together, so a move to several
+ * destinations reads the source once and removes it last. Sources are grouped
+ * by their first destination directory; groups run in parallel and the
+ * sources of a group in plan order.
+ *
+ * @author Patrik Karlström
+ */
+public class PlanExecutor {
+
+    private static final Logger LOGGER = Logger.getLogger(PlanExecutor.class.getName());
+
+    private final ResourceBundle mBundle = SystemHelper.getBundle(PlanExecutor.class, "Bundle");
+    private final CancellationToken mCancellationToken;
+    private final Command mCommand;
+    private final FileTransfer mFileTransfer;
+    private boolean mInterrupted;
+    private final BatchingOperationListener mListener;
+    private final Object mListenerLock = new Object();
+    private final OperationMetrics mMetrics = new OperationMetrics();
+    private final AtomicInteger mProgress = new AtomicInteger();
+    private final boolean mReplaceExisting;
+    private final int mThreads;
+    private boolean mVerify;
+
+    public PlanExecutor(OperationListener listener, Command command, boolean replaceExisting, int threads, CancellationToken cancellationToken, Throttle throttle) {
+        mListener = new BatchingOperationListener(listener);
+        mFileTransfer = new FileTransfer(mMetrics);
+        mFileTransfer.setThrottle(throttle);
+        mCommand = command;
+        mReplaceExisting = replaceExisting;
+        mThreads = threads;
+        mCancellationToken = cancellationToken;
+    }
+
+    public void execute(File planFile) {
+        long startTime = System.currentTimeMillis();
+        mListener.onOperationStarted();
+        mListener.onOperationProcessingStarted();
+        mListener.onOperationLog(new SimpleDateFormat().format(new Date(startTime)));
+
+        List<Plan.Entry> entries;
+        try {
+            entries = Plan.read(planFile);
+        } catch (IOException ex) {
+            mListener.onOperationFailed(ex.getLocalizedMessage());
+            mListener.onOperationLog(ex.getLocalizedMessage());
+            mListener.close();
+            return;
+        }
+
+        LinkedHashMap<File, List<Plan.Entry>> sources = new LinkedHashMap<>();
+        for (Plan.Entry entry : entries) {
+            sources.computeIfAbsent(entry.getSource(), k -> new ArrayList<>()).add(entry);
+        }
+
+        LinkedHashMap<String, List<List<Plan.Entry>>> groups = new LinkedHashMap<>();
+        for (List<Plan.Entry> sourceEntries : sources.values()) {
+            groups.computeIfAbsent(sourceEntries.get(0).getDestDir(), k -> new ArrayList<>()).add(sourceEntries);
+        }
+
+        mListener.onOperationLog(String.format(mBundle.getString("found_count"), entries.size()));
+        mListener.onOperationLog("");
+        mListener.onOperationLog(Dict.PROCESSING.toString());
+
+        ChecksumManifest manifest = null;
+        if (mVerify) {
+            manifest = new ChecksumManifest(startTime);
+            mFileTransfer.setManifest(manifest);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(mThreads, new WorkerThreadFactory());
+        List<Future<?>> futures = new ArrayList<>();
+        for (List<List<Plan.Entry>> group : groups.values()) {
+            futures.add(executor.submit(() -> executeGroup(group, entries.size())));
+        }
+        executor.shutdown();
+
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (mCancellationToken.isCancelled()) {
+                    executor.shutdownNow();
+                }
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    if (!future.isCancelled()) {
+                        future.get();
+                    }
+                } catch (ExecutionException ex) {
+                    LOGGER.log(Level.SEVERE, null, ex.getCause());
+                    mMetrics.addError();
+                    mListener.onOperationLog(String.format("%s: %s", ex.getCause().getClass().getSimpleName(), ex.getCause().getLocalizedMessage()));
+                }
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            mInterrupted = true;
+        }
+
+        if (manifest != null) {
+            try {
+                manifest.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, null, ex);
+                mListener.onOperationLog(ex.getLocalizedMessage());
+            }
+        }
+
+        mListener.onOperationMetrics(mMetrics);
+
+        if (mInterrupted || mCancellationToken.isCancelled()) {
+            mListener.onOperationLog("\n" + Dict.TASK_ABORTED.toString());
+            mListener.onOperationInterrupted();
+        } else {
+            long millis = System.currentTimeMillis() - startTime;
+            long min = TimeUnit.MILLISECONDS.toMinutes(millis);
+            long sec = TimeUnit.MILLISECONDS.toSeconds(millis) - TimeUnit.MINUTES.toSeconds(min);
+            String status = String.format("%s (%d %s, %d %s)", Dict.TASK_COMPLETED.toString(), min, Dict.TIME_MIN.toString(), sec, Dict.TIME_SEC.toString());
+            mListener.onOperationFinished(status, entries.size());
+        }
+
+        mListener.close();
+    }
+
+    /**
+     * @param verify confirms every copy by size and digest and lists it in a
+     * checksum manifest
+     */
+    public void setVerify(boolean verify) {
+        mVerify = verify;
+    }
+
+    /**
+     * Transfers the source of entries to all of their destinations at once.
+     *
+     * @return a log line per entry
+     */
+    private List<String> executeEntries(List<Plan.Entry> entries) {
+        File source = entries.get(0).getSource();
+        List<String> log = new ArrayList<>();
+        List<File> destFiles = new ArrayList<>();
+
+        try {
+            FileRecord sourceRecord = DirectoryScanner.getFileRecord(source);
+            for (Plan.Entry entry : entries) {
+                File dest = entry.getDest();
+                if (sourceRecord.getSize() != entry.getSize()) {
+                    mMetrics.addError();
+                    log.add(String.format(mBundle.getString("plan_source_changed"), source.getAbsolutePath()));
+                } else if (dest.exists() && !mReplaceExisting) {
+                    mMetrics.addError();
+                    log.add(String.format(Dict.Dialog.ERROR_DEST_FILE_EXISTS.toString(), dest.getAbsolutePath()));
+                } else {
+                    try {
+                        long start = System.nanoTime();
+                        FileUtils.forceMkdir(dest.getParentFile());
+                        mMetrics.recordSince(OperationMetrics.Phase.MKDIR, start);
+                        destFiles.add(dest);
+                    } catch (IOException ex) {
+                        mMetrics.addError();
+                        log.add(ex.getLocalizedMessage());
+                    }
+                }
+            }
+
+            if (destFiles.isEmpty()) {
+                return log;
+            }
+
+            Map<File, IOException> failures = mFileTransfer.transfer(mCommand, sourceRecord, destFiles);
+            mMetrics.addFile();
+            mMetrics.addBytes(sourceRecord.getSize());
+
+            for (File dest : destFiles) {
+                IOException failure = failures.get(dest);
+                if (failure == null) {
+                    log.add(String.format("%s %s  %s", mCommand.getShellName(), source.getAbsolutePath(), dest.toString()));
+                } else {
+                    mMetrics.addError();
+                    log.add(String.format("%s: %s", failure.getClass().getSimpleName(), failure.getLocalizedMessage()));
+                }
+            }
+        } catch (IOException ex) {
+            mMetrics.addError();
+            log.add(String.format("%s: %s", ex.getClass().getSimpleName(), ex.getLocalizedMessage()));
+        }
+
+        return log;
+    }
+
+    private void executeGroup(List<List<Plan.Entry>> group, int max) {
+        for (List<Plan.Entry> entries : group) {
+            if (!mCancellationToken.proceed() || Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            List<String> log = executeEntries(entries);
+            synchronized (mListenerLock) {
+                log.forEach(mListener::onOperationLog);
+                mListener.onOperationProgress(mProgress.addAndGet(entries.size()), max);
+            }
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FileByDate-plan-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
@@ -19,11 +19,14 @@ import com.google.gson.annotations.SerializedName;
 import java.io.File;
 import java.nio.file.FileSystems;
 import java.nio.file.PathMatcher;
-import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.cli.CommandLine;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import se.trixon.almond.util.Dict;
@@ -40,6 +43,13 @@ import se.trixon.tools.fbd.ui.FbdModule;
  */
 public class Profile implements Comparable<Profile>, Cloneable {
 
+    @SerializedName("additional_destinations")
+    private List<File> mAdditionalDestDirs = new ArrayList<>();
+    @SerializedName("additional_sources")
+    private List<File> mAdditionalSourceDirs = new ArrayList<>();
+    @SerializedName("bandwidth_limit")
+    private long mBandwidthLimit;
+    private transient String mBandwidthLimitString;
     private transient final ResourceBundle mBundle = SystemHelper.getBundle(Profile.class, "Bundle");
     private transient final ResourceBundle mBundleUI = SystemHelper.getBundle(FbdModule.class, "Bundle");
     @SerializedName("case_base")
@@ -50,12 +60,14 @@ public class Profile implements Comparable<Profile>, Cloneable {
     private transient String mCaseExtString;
     @SerializedName("operation")
     private Command mCommand;
-    private transient SimpleDateFormat mDateFormat;
+    private transient DateTimeFormatter mDateFormatter;
     @SerializedName("date_pattern")
     private String mDatePattern;
     @SerializedName("date_source")
     private TbDateSource mDateSource = TbDateSource.FILE_CREATED;
     private transient String mDateSourceString;
+    @SerializedName("deduplicate")
+    private boolean mDeduplicate;
     @SerializedName("description")
     private String mDescription;
     @SerializedName("destination")
@@ -64,22 +76,39 @@ public class Profile implements Comparable<Profile>, Cloneable {
     private boolean mDryRun;
     @SerializedName("file_pattern")
     private String mFilePattern;
+    @SerializedName("file_rate_limit")
+    private int mFileRateLimit;
+    private transient String mFileRateLimitString;
     @SerializedName("follow_links")
     private boolean mFollowLinks;
+    @SerializedName("incremental")
+    private boolean mIncremental;
+    @SerializedName("inode_order")
+    private boolean mInodeOrder;
     @SerializedName("last_run")
     private long mLastRun;
+    private transient boolean mModeClone;
     private transient boolean mModeCopy;
+    private transient boolean mModeLink;
     private transient boolean mModeMove;
     @SerializedName("name")
     private String mName;
     private transient PathMatcher mPathMatcher;
+    private transient File mPlanFile;
     @SerializedName("recursive")
     private boolean mRecursive;
     @SerializedName("overwrite")
     private boolean mReplaceExisting;
     @SerializedName("source")
     private File mSourceDir;
+    @SerializedName("streaming")
+    private boolean mStreaming;
+    @SerializedName("threads")
+    private int mThreads = 1;
+    private transient String mThreadsString;
     private transient StringBuilder mValidationErrorBuilder = new StringBuilder();
+    @SerializedName("verify")
+    private boolean mVerify;
 
     public Profile() {
     }
@@ -87,16 +116,34 @@ public class Profile implements Comparable<Profile>, Cloneable {
     public Profile(CommandLine commandLine) {
         mModeCopy = commandLine.hasOption("copy");
         mModeMove = commandLine.hasOption("move");
+        mModeLink = commandLine.hasOption("link");
+        mModeClone = commandLine.hasOption("clone");
 
         mDatePattern = commandLine.getOptionValue("dp");
         mDateSourceString = commandLine.getOptionValue("ds");
         mCaseBaseString = commandLine.getOptionValue("case-base");
         mCaseExtString = commandLine.getOptionValue("case-ext");
+        mThreadsString = commandLine.getOptionValue("threads");
+        mBandwidthLimitString = commandLine.getOptionValue("bandwidth-limit");
+        mFileRateLimitString = commandLine.getOptionValue("file-rate-limit");
+        if (commandLine.hasOption("additional-dest")) {
+            for (String destDir : commandLine.getOptionValues("additional-dest")) {
+                mAdditionalDestDirs.add(new File(destDir));
+            }
+        }
+        if (commandLine.hasOption("plan")) {
+            mPlanFile = new File(commandLine.getOptionValue("plan"));
+        }
 
+        mDeduplicate = commandLine.hasOption("dedup");
         mDryRun = commandLine.hasOption("dry-run");
         mFollowLinks = commandLine.hasOption("links");
+        mIncremental = commandLine.hasOption("incremental");
+        mInodeOrder = commandLine.hasOption("inode-order");
         mRecursive = commandLine.hasOption("recursive");
         mReplaceExisting = commandLine.hasOption("overwrite");
+        mStreaming = commandLine.hasOption("stream");
+        mVerify = commandLine.hasOption("verify");
 
         setSourceAndDest(commandLine.getArgs());
     }
@@ -104,7 +151,11 @@ public class Profile implements Comparable<Profile>, Cloneable {
     @Override
     public Profile clone() {
         try {
-            return (Profile) super.clone();
+            Profile profile = (Profile) super.clone();
+            profile.mAdditionalDestDirs = new ArrayList<>(getAdditionalDestDirs());
+            profile.mAdditionalSourceDirs = new ArrayList<>(getAdditionalSourceDirs());
+
+            return profile;
         } catch (CloneNotSupportedException ex) {
             Logger.getLogger(Profile.class.getName()).log(Level.SEVERE, null, ex);
             return null;
@@ -116,6 +167,29 @@ public class Profile implements Comparable<Profile>, Cloneable {
         return mName.compareTo(o.getName());
     }
 
+    /**
+     * @return the destinations that also get every file, next to the
+     * destination directory
+     */
+    public List<File> getAdditionalDestDirs() {
+        return mAdditionalDestDirs == null ? new ArrayList<>() : mAdditionalDestDirs;
+    }
+
+    /**
+     * @return the sources scanned along with the source directory
+     */
+    public List<File> getAdditionalSourceDirs() {
+        return mAdditionalSourceDirs == null ? new ArrayList<>() : mAdditionalSourceDirs;
+    }
+
+    /**
+     * @return the highest number of bytes transferred per second, 0 for no
+     * limit
+     */
+    public long getBandwidthLimit() {
+        return mBandwidthLimit;
+    }
+
     public TbNameCase getCaseBase() {
         return mCaseBase;
     }
@@ -128,8 +202,8 @@ public class Profile implements Comparable<Profile>, Cloneable {
         return mCommand;
     }
 
-    public SimpleDateFormat getDateFormat() {
-        return mDateFormat;
+    public DateTimeFormatter getDateFormatter() {
+        return mDateFormatter;
     }
 
     public String getDatePattern() {
@@ -156,10 +230,30 @@ public class Profile implements Comparable<Profile>, Cloneable {
         return mDestDir == null ? "" : mDestDir.getPath();
     }
 
+    /**
+     * @return the destination directory followed by the additional
+     * destinations
+     */
+    public List<File> getDestDirs() {
+        List<File> destDirs = new ArrayList<>();
+        destDirs.add(mDestDir);
+        destDirs.addAll(getAdditionalDestDirs());
+
+        return destDirs;
+    }
+
     public String getFilePattern() {
         return mFilePattern;
     }
 
+    /**
+     * @return the highest number of files transferred per second, 0 for no
+     * limit
+     */
+    public int getFileRateLimit() {
+        return mFileRateLimit;
+    }
+
     public long getLastRun() {
         return mLastRun;
     }
@@ -169,13 +263,25 @@ public class Profile implements Comparable<Profile>, Cloneable {
     }
 
     public int getOperation() {
-        return mModeCopy ? 0 : 1;
+        if (mModeCopy) {
+            return Command.COPY.ordinal();
+        } else if (mModeLink) {
+            return Command.LINK.ordinal();
+        } else if (mModeClone) {
+            return Command.CLONE.ordinal();
+        } else {
+            return Command.MOVE.ordinal();
+        }
     }
 
     public PathMatcher getPathMatcher() {
         return mPathMatcher;
     }
 
+    public File getPlanFile() {
+        return mPlanFile;
+    }
+
     public File getSourceDir() {
         return mSourceDir;
     }
@@ -184,10 +290,29 @@ public class Profile implements Comparable<Profile>, Cloneable {
         return mSourceDir == null ? "" : mSourceDir.getPath();
     }
 
+    /**
+     * @return the source directory followed by the additional sources
+     */
+    public List<File> getSourceDirs() {
+        List<File> sourceDirs = new ArrayList<>();
+        sourceDirs.add(mSourceDir);
+        sourceDirs.addAll(getAdditionalSourceDirs());
+
+        return sourceDirs;
+    }
+
+    public int getThreads() {
+        return mThreads;
+    }
+
     public String getValidationError() {
         return mValidationErrorBuilder.toString();
     }
 
+    public boolean isDeduplicate() {
+        return mDeduplicate;
+    }
+
     public boolean isDryRun() {
         return mDryRun;
     }
@@ -196,6 +321,18 @@ public class Profile implements Comparable<Profile>, Cloneable {
         return mFollowLinks;
     }
 
+    public boolean isIncremental() {
+        return mIncremental;
+    }
+
+    /**
+     * @return true if files are read in the physical order of the source
+     * device, in batches
+     */
+    public boolean isInodeOrder() {
+        return mInodeOrder;
+    }
+
     public boolean isRecursive() {
         return mRecursive;
     }
@@ -204,14 +341,13 @@ public class Profile implements Comparable<Profile>, Cloneable {
         return mReplaceExisting;
     }
 
+    public boolean isStreaming() {
+        return mStreaming;
+    }
+
     public boolean isValid() {
         mValidationErrorBuilder = new StringBuilder();
-
-        if (mModeCopy == mModeMove) {
-            addValidationError(mBundle.getString("invalid_command"));
-        } else {
-            updateCommand();
-        }
+        validateCommand();
 
         try {
             mPathMatcher = FileSystems.getDefault().getPathMatcher("glob:" + mFilePattern);
@@ -220,7 +356,7 @@ public class Profile implements Comparable<Profile>, Cloneable {
         }
 
         try {
-            mDateFormat = new SimpleDateFormat(mDatePattern, TbPreferences.getInstance().general().getLocale());
+            mDateFormatter = DateDirectoryResolver.createFormatter(mDatePattern, TbPreferences.getInstance().general().getLocale());
         } catch (Exception e) {
             addValidationError(String.format(mBundle.getString("invalid_date_pattern"), mDatePattern));
         }
@@ -248,17 +384,71 @@ public class Profile implements Comparable<Profile>, Cloneable {
             }
         }
 
-        if (mSourceDir == null || !mSourceDir.isDirectory()) {
-            addValidationError(String.format(mBundle.getString("invalid_source_dir"), mSourceDir));
+        validateThreads();
+        validateLimits();
+
+        if (mPlanFile != null && !mDryRun) {
+            addValidationError(mBundle.getString("invalid_plan"));
+        }
+
+        for (File sourceDir : getSourceDirs()) {
+            if (sourceDir == null || !sourceDir.isDirectory()) {
+                addValidationError(String.format(mBundle.getString("invalid_source_dir"), sourceDir));
+            }
         }
 
-        if (mDestDir == null || !mDestDir.isDirectory()) {
-            addValidationError(String.format(mBundle.getString("invalid_dest_dir"), mDestDir));
+        validateOverlap(getSourceDirs(), "invalid_source_overlap");
+
+        for (File destDir : getDestDirs()) {
+            if (destDir == null || !destDir.isDirectory()) {
+                addValidationError(String.format(mBundle.getString("invalid_dest_dir"), destDir));
+            }
         }
 
+        validateOverlap(getDestDirs(), "invalid_dest_overlap");
+
         return mValidationErrorBuilder.length() == 0;
     }
 
+    /**
+     * Validates the options used when executing a plan, the command and the
+     * thread count.
+     *
+     * @return
+     */
+    public boolean isValidForPlan() {
+        mValidationErrorBuilder = new StringBuilder();
+        validateCommand();
+        validateThreads();
+        validateLimits();
+
+        return mValidationErrorBuilder.length() == 0;
+    }
+
+    /**
+     * @return true if every transferred file is confirmed by size and digest
+     * and listed in a checksum manifest
+     */
+    public boolean isVerify() {
+        return mVerify;
+    }
+
+    public void setAdditionalDestDirs(List<File> additionalDestDirs) {
+        mAdditionalDestDirs = additionalDestDirs;
+    }
+
+    public void setAdditionalSourceDirs(List<File> additionalSourceDirs) {
+        mAdditionalSourceDirs = additionalSourceDirs;
+    }
+
+    public void setBandwidthLimit(long bandwidthLimit) {
+        mBandwidthLimit = bandwidthLimit;
+    }
+
+    public void setBandwidthLimitString(String bandwidthLimitString) {
+        mBandwidthLimitString = bandwidthLimitString;
+    }
+
     public void setCaseBase(TbNameCase caseBase) {
         mCaseBase = caseBase;
     }
@@ -283,6 +473,10 @@ public class Profile implements Comparable<Profile>, Cloneable {
         mDateSourceString = dateSourceString;
     }
 
+    public void setDeduplicate(boolean deduplicate) {
+        mDeduplicate = deduplicate;
+    }
+
     public void setDescription(String description) {
         mDescription = description;
     }
@@ -299,10 +493,26 @@ public class Profile implements Comparable<Profile>, Cloneable {
         mFilePattern = filePattern;
     }
 
+    public void setFileRateLimit(int fileRateLimit) {
+        mFileRateLimit = fileRateLimit;
+    }
+
+    public void setFileRateLimitString(String fileRateLimitString) {
+        mFileRateLimitString = fileRateLimitString;
+    }
+
     public void setFollowLinks(boolean links) {
         mFollowLinks = links;
     }
 
+    public void setIncremental(boolean incremental) {
+        mIncremental = incremental;
+    }
+
+    public void setInodeOrder(boolean inodeOrder) {
+        mInodeOrder = inodeOrder;
+    }
+
     public void setLastRun(long lastRun) {
         mLastRun = lastRun;
     }
@@ -312,13 +522,11 @@ public class Profile implements Comparable<Profile>, Cloneable {
     }
 
     public void setOperation(int index) {
-        if (index == 0) {
-            mModeCopy = true;
-            mModeMove = false;
-        } else {
-            mModeCopy = false;
-            mModeMove = true;
-        }
+        Command command = index >= 0 && index < Command.values().length ? Command.values()[index] : Command.MOVE;
+        mModeCopy = command == Command.COPY;
+        mModeMove = command == Command.MOVE;
+        mModeLink = command == Command.LINK;
+        mModeClone = command == Command.CLONE;
 
         updateCommand();
     }
@@ -327,6 +535,10 @@ public class Profile implements Comparable<Profile>, Cloneable {
         mPathMatcher = pathMatcher;
     }
 
+    public void setPlanFile(File planFile) {
+        mPlanFile = planFile;
+    }
+
     public void setRecursive(boolean recursive) {
         mRecursive = recursive;
     }
@@ -335,21 +547,29 @@ public class Profile implements Comparable<Profile>, Cloneable {
         mReplaceExisting = replaceExisting;
     }
 
+    /**
+     * @param args one or more sources followed by the destination
+     */
     public void setSourceAndDest(String[] args) {
-        if (args.length == 2) {
-            String source = args[0];
-            File sourceFile = new File(source);
-
-            if (sourceFile.isDirectory()) {
-                mSourceDir = sourceFile;
-                mFilePattern = "*";
-            } else {
-                String sourceDir = FilenameUtils.getFullPathNoEndSeparator(source);
-                mSourceDir = new File(sourceDir);
-                mFilePattern = FilenameUtils.getName(source);
+        if (args.length >= 2) {
+            mFilePattern = "*";
+            List<File> sourceDirs = new ArrayList<>();
+
+            for (int i = 0; i < args.length - 1; i++) {
+                String source = args[i];
+                File sourceFile = new File(source);
+
+                if (sourceFile.isDirectory()) {
+                    sourceDirs.add(sourceFile);
+                } else {
+                    sourceDirs.add(new File(FilenameUtils.getFullPathNoEndSeparator(source)));
+                    mFilePattern = FilenameUtils.getName(source);
+                }
             }
 
-            setDestDir(new File(args[1]));
+            mSourceDir = sourceDirs.remove(0);
+            mAdditionalSourceDirs = sourceDirs;
+            setDestDir(new File(args[args.length - 1]));
         } else {
             addValidationError(mBundle.getString("invalid_arg_count"));
         }
@@ -359,6 +579,22 @@ public class Profile implements Comparable<Profile>, Cloneable {
         mSourceDir = source;
     }
 
+    public void setStreaming(boolean streaming) {
+        mStreaming = streaming;
+    }
+
+    public void setThreads(int threads) {
+        mThreads = threads;
+    }
+
+    public void setThreadsString(String threadsString) {
+        mThreadsString = threadsString;
+    }
+
+    public void setVerify(boolean verify) {
+        mVerify = verify;
+    }
+
     public String toDebugString() {
         isValid();
         String s = String.format(mBundle.getString("profile"),
@@ -372,11 +608,25 @@ public class Profile implements Comparable<Profile>, Cloneable {
 
         StringBuilder b = new StringBuilder(s);
 
+        for (File sourceDir : getAdditionalSourceDirs()) {
+            conditionalAppendDebugOption(b, true, String.format(mBundle.getString("additional_source"), sourceDir));
+        }
+        for (File destDir : getAdditionalDestDirs()) {
+            conditionalAppendDebugOption(b, true, String.format(mBundle.getString("additional_dest"), destDir));
+        }
         conditionalAppendDebugOption(b, mFollowLinks, Dict.FOLLOW_LINKS.toString());
         conditionalAppendDebugOption(b, mRecursive, Dict.RECURSIVE.toString());
         conditionalAppendDebugOption(b, mReplaceExisting, Dict.REPLACE.toString());
         conditionalAppendDebugOption(b, mCaseBase != TbNameCase.UNCHANGED, Dict.BASENAME.toString() + " " + mCaseBase);
         conditionalAppendDebugOption(b, mCaseExt != TbNameCase.UNCHANGED, Dict.EXTENSION.toString() + " " + mCaseExt);
+        conditionalAppendDebugOption(b, mStreaming, mBundle.getString("streaming"));
+        conditionalAppendDebugOption(b, mDeduplicate, mBundle.getString("deduplicate"));
+        conditionalAppendDebugOption(b, mIncremental, mBundle.getString("incremental"));
+        conditionalAppendDebugOption(b, mInodeOrder, mBundle.getString("inode_order"));
+        conditionalAppendDebugOption(b, mThreads > 1, String.format(mBundle.getString("threads"), mThreads));
+        conditionalAppendDebugOption(b, mVerify, mBundle.getString("verify"));
+        conditionalAppendDebugOption(b, mBandwidthLimit > 0, String.format(mBundle.getString("bandwidth_limit"), FileUtils.byteCountToDisplaySize(mBandwidthLimit)));
+        conditionalAppendDebugOption(b, mFileRateLimit > 0, String.format(mBundle.getString("file_rate_limit"), mFileRateLimit));
 
         return b.toString();
     }
@@ -398,7 +648,103 @@ public class Profile implements Comparable<Profile>, Cloneable {
         }
     }
 
+    private boolean isSameOrAncestor(File ancestor, File file) {
+        return file.toPath().toAbsolutePath().normalize().startsWith(ancestor.toPath().toAbsolutePath().normalize());
+    }
+
+    /**
+     * @param string a byte count with an optional K, M or G suffix
+     * @return the byte count, -1 if string is not valid
+     */
+    private long parseByteCount(String string) {
+        String s = string.trim().toUpperCase();
+        long unit = 1;
+
+        if (s.endsWith("K")) {
+            unit = FileUtils.ONE_KB;
+        } else if (s.endsWith("M")) {
+            unit = FileUtils.ONE_MB;
+        } else if (s.endsWith("G")) {
+            unit = FileUtils.ONE_GB;
+        }
+
+        if (unit > 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+
+        try {
+            return Long.parseLong(s) * unit;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     private void updateCommand() {
-        mCommand = mModeCopy ? Command.COPY : Command.MOVE;
+        if (mModeCopy) {
+            mCommand = Command.COPY;
+        } else if (mModeLink) {
+            mCommand = Command.LINK;
+        } else if (mModeClone) {
+            mCommand = Command.CLONE;
+        } else {
+            mCommand = Command.MOVE;
+        }
+    }
+
+    private void validateCommand() {
+        int modeCount = (mModeCopy ? 1 : 0) + (mModeMove ? 1 : 0) + (mModeLink ? 1 : 0) + (mModeClone ? 1 : 0);
+        if (modeCount != 1) {
+            addValidationError(mBundle.getString("invalid_command"));
+        } else {
+            updateCommand();
+        }
+    }
+
+    private void validateLimits() {
+        if (mBandwidthLimitString != null) {
+            mBandwidthLimit = parseByteCount(mBandwidthLimitString);
+        }
+
+        if (mBandwidthLimit < 0) {
+            addValidationError(String.format(mBundle.getString("invalid_bandwidth_limit"), mBandwidthLimitString != null ? mBandwidthLimitString : mBandwidthLimit));
+        }
+
+        if (mFileRateLimitString != null) {
+            try {
+                mFileRateLimit = Integer.parseInt(mFileRateLimitString);
+            } catch (NumberFormatException e) {
+                mFileRateLimit = -1;
+            }
+        }
+
+        if (mFileRateLimit < 0) {
+            addValidationError(String.format(mBundle.getString("invalid_file_rate_limit"), mFileRateLimitString != null ? mFileRateLimitString : mFileRateLimit));
+        }
+    }
+
+    private void validateOverlap(List<File> dirs, String key) {
+        for (int i = 0; i < dirs.size(); i++) {
+            for (int j = i + 1; j < dirs.size(); j++) {
+                File a = dirs.get(i);
+                File b = dirs.get(j);
+                if (a != null && b != null && (isSameOrAncestor(a, b) || isSameOrAncestor(b, a))) {
+                    addValidationError(String.format(mBundle.getString(key), a, b));
+                }
+            }
+        }
+    }
+
+    private void validateThreads() {
+        if (mThreadsString != null) {
+            try {
+                mThreads = Integer.parseInt(mThreadsString);
+            } catch (NumberFormatException e) {
+                mThreads = 0;
+            }
+        }
+
+        if (mThreads < 1) {
+            addValidationError(String.format(mBundle.getString("invalid_threads"), mThreadsString != null ? mThreadsString : mThreads));
+        }
     }
 }
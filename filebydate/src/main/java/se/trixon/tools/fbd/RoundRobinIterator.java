@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Takes one element at a time from each of several iterators in turn,
+ * skipping those that are exhausted.
+ * <p>
+ * The merged order only depends on the order of each iterator, not on how
+ * fast they deliver.
+ *
+ * @author Patrik Karlström
+ * @param <T>
+ */
+public class RoundRobinIterator<T> implements Iterator<T> {
+
+    private int mIndex;
+    private final List<Iterator<T>> mIterators;
+
+    public RoundRobinIterator(List<? extends Iterator<T>> iterators) {
+        mIterators = new ArrayList<>(iterators);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!mIterators.isEmpty()) {
+            if (mIndex >= mIterators.size()) {
+                mIndex = 0;
+            }
+
+            if (mIterators.get(mIndex).hasNext()) {
+                return true;
+            }
+
+            mIterators.remove(mIndex);
+        }
+
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return mIterators.get(mIndex++).next();
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import se.trixon.tools.fbd.Operation.Command;
+
+/**
+ * Write-ahead journal of the last run of a profile.
+ * <p>
+ * Every scheduled transfer is appended as a planned record before it starts
+ * and as a completed record once done. Records are forced to disk in batches;
+ * a move waits for its planned record to be durable. The journal lets an
+ * interrupted run be resumed and a run be undone. A torn tail left by a crash
+ * ends the journal and is cut off before a resumed run appends to it.
+ *
+ * @author Patrik Karlström
+ */
+public class RunJournal {
+
+    private static final byte BEGIN = 'B';
+    private static final byte COMPLETED = 'C';
+    private static final byte END = 'E';
+    private static final byte PLANNED = 'P';
+    private static final int SYNC_BATCH = 256;
+    private static final long SYNC_INTERVAL = 1000;
+
+    private Command mCommand;
+    private long mDurableId;
+    private final File mFile;
+    private long mLastId;
+    private long mLastSync;
+    private FileOutputStream mOutputStream;
+    private int mUnsynced;
+    private long mValidLength;
+    private DataOutputStream mWriter;
+
+    public RunJournal(Profile profile) {
+        String name = profile.getName() == null ? "" : profile.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        mFile = new File(new File(ProfileManager.getInstance().getDirectory(), "journal"), name + ".wal");
+    }
+
+    /**
+     * Waits until the planned record id is on disk, forcing the pending
+     * batch if needed.
+     *
+     * @param id
+     * @throws IOException
+     */
+    public synchronized void awaitDurable(long id) throws IOException {
+        if (mDurableId < id) {
+            sync();
+        }
+    }
+
+    /**
+     * Starts a new journal, replacing the one of the previous run.
+     *
+     * @param command
+     * @throws IOException
+     */
+    public synchronized void begin(Command command) throws IOException {
+        FileUtils.forceMkdir(mFile.getParentFile());
+        mCommand = command;
+        open(false);
+        mWriter.writeByte(BEGIN);
+        mWriter.writeUTF(command.name());
+        mWriter.writeLong(System.currentTimeMillis());
+        sync();
+    }
+
+    public synchronized void close() throws IOException {
+        if (mWriter != null) {
+            sync();
+            mWriter.close();
+            mWriter = null;
+        }
+    }
+
+    public synchronized void completed(long id) throws IOException {
+        mWriter.writeByte(COMPLETED);
+        mWriter.writeLong(id);
+        afterAppend();
+    }
+
+    public synchronized void end() throws IOException {
+        mWriter.writeByte(END);
+        close();
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @param source
+     * @param dest
+     * @return the id of the planned record
+     * @throws IOException
+     */
+    public synchronized long planned(File source, File dest) throws IOException {
+        long id = ++mLastId;
+        mWriter.writeByte(PLANNED);
+        mWriter.writeLong(id);
+        mWriter.writeUTF(source.getPath());
+        mWriter.writeUTF(dest.getPath());
+        afterAppend();
+
+        return id;
+    }
+
+    /**
+     * Reads the journal of the previous run.
+     *
+     * @return the planned transfers in order, completed or not
+     * @throws IOException
+     */
+    public synchronized List<Entry> read() throws IOException {
+        LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+        mCommand = null;
+        mLastId = 0;
+        mValidLength = 0;
+
+        if (!mFile.isFile()) {
+            return new ArrayList<>();
+        }
+
+        CountingInputStream countingStream = new CountingInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+        try (DataInputStream inputStream = new DataInputStream(countingStream)) {
+            while (true) {
+                byte type = inputStream.readByte();
+                if (type == BEGIN) {
+                    mCommand = Command.valueOf(inputStream.readUTF());
+                    inputStream.readLong();
+                } else if (type == PLANNED) {
+                    long id = inputStream.readLong();
+                    entries.put(id, new Entry(new File(inputStream.readUTF()), new File(inputStream.readUTF())));
+                    mLastId = Math.max(mLastId, id);
+                } else if (type == COMPLETED) {
+                    Entry entry = entries.get(inputStream.readLong());
+                    if (entry != null) {
+                        entry.mCompleted = true;
+                    }
+                } else if (type != END) {
+                    break;
+                }
+                mValidLength = countingStream.mCount;
+            }
+        } catch (EOFException | UTFDataFormatException | IllegalArgumentException ex) {
+            //nvm, a torn tail after a crash ends the journal
+        }
+
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Reads the journal of an interrupted run, cuts off a torn tail and
+     * reopens it for appending.
+     *
+     * @return the planned transfers of the interrupted run
+     * @throws IOException
+     */
+    public synchronized List<Entry> resume() throws IOException {
+        List<Entry> entries = read();
+        if (mFile.isFile()) {
+            try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+                file.setLength(mValidLength);
+            }
+        }
+        open(true);
+
+        return entries;
+    }
+
+    /**
+     * Reverts the transfers of the last run, newest first. Moved files are
+     * moved back, other commands have their destination files removed. A move
+     * to several destinations is moved back from one and removed from the
+     * others.
+     *
+     * @param listener
+     * @param destDirs the destination roots, emptied date folders below them
+     * are removed
+     * @return the number of reverted files
+     * @throws IOException
+     */
+    public synchronized int undo(OperationListener listener, List<File> destDirs) throws IOException {
+        List<Entry> entries = read();
+        if (mCommand == null) {
+            return 0;
+        }
+
+        List<Path> roots = new ArrayList<>();
+        for (File destDir : destDirs) {
+            roots.add(destDir.getCanonicalFile().toPath());
+        }
+
+        int count = 0;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            File source = entry.getSource();
+            File dest = entry.getDest();
+
+            try {
+                if (mCommand == Command.MOVE) {
+                    if (dest.isFile() && !source.exists()) {
+                        FileUtils.forceMkdir(source.getParentFile());
+                        FileUtils.moveFile(dest, source);
+                        listener.onOperationLog(String.format("mv %s  %s", dest.getAbsolutePath(), source.getAbsolutePath()));
+                        count++;
+                    } else if (entry.isCompleted() && dest.isFile() && source.length() == dest.length()) {
+                        Files.delete(dest.toPath());
+                        listener.onOperationLog(String.format("rm %s", dest.getAbsolutePath()));
+                    }
+                } else if ((entry.isCompleted() || source.exists()) && dest.isFile()) {
+                    Files.delete(dest.toPath());
+                    listener.onOperationLog(String.format("rm %s", dest.getAbsolutePath()));
+                    count++;
+                }
+            } catch (IOException ex) {
+                listener.onOperationLog(String.format("%s: %s", ex.getClass().getSimpleName(), ex.getLocalizedMessage()));
+            }
+
+            for (File dir = dest.getParentFile(); dir != null && isBelow(dir, roots) && dir.delete(); dir = dir.getParentFile()) {
+                //removes emptied date folders
+            }
+        }
+
+        Files.move(mFile.toPath(), new File(mFile.getPath() + ".undone").toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        return count;
+    }
+
+    private void afterAppend() throws IOException {
+        long now = System.currentTimeMillis();
+        if (++mUnsynced >= SYNC_BATCH || now - mLastSync >= SYNC_INTERVAL) {
+            sync();
+        }
+    }
+
+    /**
+     * @return true if dir is strictly below one of roots, compared by
+     * canonical path
+     */
+    private boolean isBelow(File dir, List<Path> roots) throws IOException {
+        Path path = dir.getCanonicalFile().toPath();
+        for (Path root : roots) {
+            if (path.startsWith(root) && !path.equals(root)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void open(boolean append) throws IOException {
+        mOutputStream = new FileOutputStream(mFile, append);
+        mWriter = new DataOutputStream(new BufferedOutputStream(mOutputStream));
+        mDurableId = mLastId;
+        mLastSync = System.currentTimeMillis();
+    }
+
+    private void sync() throws IOException {
+        mWriter.flush();
+        mOutputStream.getChannel().force(false);
+        mDurableId = mLastId;
+        mUnsynced = 0;
+        mLastSync = System.currentTimeMillis();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                mCount++;
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                mCount += n;
+            }
+
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+
+            return skipped;
+        }
+    }
+
+    public static class Entry {
+
+        private boolean mCompleted;
+        private final File mDest;
+        private final File mSource;
+
+        public Entry(File source, File dest) {
+            mSource = source;
+            mDest = dest;
+        }
+
+        public File getDest() {
+            return mDest;
+        }
+
+        public File getSource() {
+            return mSource;
+        }
+
+        public boolean isCompleted() {
+            return mCompleted;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a {@link DirectoryScanner} in the background and hands the records over
+ * through a bounded queue, so processing can start with the first file found.
+ * <p>
+ * The scanner blocks when the queue is full. {@link #hasNext()} blocks until
+ * a record is available or the scan has ended.
+ *
+ * @author Patrik Karlström
+ */
+public class ScanQueue implements Iterator<FileRecord> {
+
+    private static final FileRecord END = new FileRecord(null, 0, 0, 0);
+
+    private volatile boolean mClosed;
+    private volatile boolean mCompleted;
+    private final Path mDir;
+    private final AtomicInteger mDiscovered = new AtomicInteger();
+    private FileRecord mNext;
+    private final BlockingQueue<FileRecord> mQueue;
+    private final DirectoryScanner mScanner;
+    private Thread mThread;
+
+    public ScanQueue(DirectoryScanner scanner, Path dir, int capacity) {
+        mScanner = scanner;
+        mDir = dir;
+        mQueue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public void close() {
+        mClosed = true;
+        mQueue.clear();
+    }
+
+    public int getDiscovered() {
+        return mDiscovered.get();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mNext == null) {
+            try {
+                mNext = mQueue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+        }
+
+        if (mNext == END) {
+            mQueue.offer(END);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the scan went through the whole tree
+     */
+    public boolean isCompleted() {
+        return mCompleted;
+    }
+
+    @Override
+    public FileRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        FileRecord fileRecord = mNext;
+        mNext = null;
+
+        return fileRecord;
+    }
+
+    public void start() {
+        mThread = new Thread(() -> {
+            try {
+                mCompleted = mScanner.scan(mDir, (fileRecord) -> {
+                    mDiscovered.incrementAndGet();
+                    put(fileRecord);
+                });
+            } catch (CancellationException ex) {
+                mCompleted = false;
+            } finally {
+                try {
+                    put(END);
+                } catch (CancellationException ex) {
+                    //nvm, nobody is listening
+                }
+            }
+        }, "FileByDate-scanner");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    private void put(FileRecord fileRecord) {
+        try {
+            while (!mQueue.offer(fileRecord, 100, TimeUnit.MILLISECONDS)) {
+                if (mClosed) {
+                    throw new CancellationException();
+                }
+            }
+        } catch (InterruptedException ex) {
+            throw new CancellationException();
+        }
+    }
+}
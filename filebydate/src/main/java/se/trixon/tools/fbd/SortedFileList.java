@@ -0,0 +1,322 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * A file list that is sorted per source, with the sources in the order they
+ * were added, and that spills to disk when it grows too large for the heap.
+ * <p>
+ * Up to {@link #RUN_SIZE} records are kept in memory. Once full they are
+ * sorted and written to a temporary run, and the runs are merged again when
+ * iterating. At most {@link #MAX_FAN_IN} runs are open at a time, larger
+ * lists are merged in several passes. The order is the one of
+ * {@link FileRecord#compareTo(FileRecord)}, whether spilled or not.
+ *
+ * @author Patrik Karlström
+ */
+public class SortedFileList implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FAN_IN = 64;
+    private static final int RUN_SIZE = 100000;
+    private static final Comparator<Entry> ORDER = Comparator.<Entry>comparingInt(entry -> entry.mSource).thenComparing(entry -> entry.mFileRecord);
+
+    private List<Entry> mBuffer = new ArrayList<>();
+    private File mDirectory;
+    private final ArrayDeque<Run> mRuns = new ArrayDeque<>();
+    private int mRunCounter;
+    private int mSize;
+
+    public SortedFileList() {
+    }
+
+    /**
+     * Adds fileRecord to the files of source. Safe to call from several
+     * threads.
+     *
+     * @param source index of the source, lower sources are iterated first
+     * @param fileRecord
+     * @throws UncheckedIOException if a run could not be written
+     */
+    public synchronized void add(int source, FileRecord fileRecord) {
+        mBuffer.add(new Entry(source, fileRecord));
+        mSize++;
+
+        if (mBuffer.size() >= RUN_SIZE) {
+            try {
+                spill();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Deletes the runs that are still on disk.
+     */
+    @Override
+    public synchronized void close() {
+        for (Run run : mRuns) {
+            run.delete();
+        }
+
+        mRuns.clear();
+        mBuffer = new ArrayList<>();
+
+        if (mDirectory != null) {
+            mDirectory.delete();
+            mDirectory = null;
+        }
+    }
+
+    public synchronized int getRunCount() {
+        return mRuns.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Ends adding and returns the merged records. Reading a run may throw
+     * {@link UncheckedIOException}.
+     *
+     * @return
+     * @throws IOException if the runs could not be merged
+     */
+    public synchronized Iterator<FileRecord> iterator() throws IOException {
+        mBuffer.sort(ORDER);
+
+        if (mRuns.isEmpty()) {
+            Iterator<Entry> iterator = mBuffer.iterator();
+
+            return new Iterator<FileRecord>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public FileRecord next() {
+                    return iterator.next().mFileRecord;
+                }
+            };
+        }
+
+        while (mRuns.size() >= MAX_FAN_IN) {
+            List<Iterator<Entry>> runs = new ArrayList<>();
+            for (int i = 0; i < MAX_FAN_IN; i++) {
+                runs.add(mRuns.poll().open());
+            }
+
+            writeRun(new MergeIterator(runs));
+        }
+
+        List<Iterator<Entry>> runs = new ArrayList<>();
+        runs.add(mBuffer.iterator());
+        for (Run run : mRuns) {
+            runs.add(run.open());
+        }
+
+        MergeIterator iterator = new MergeIterator(runs);
+
+        return new Iterator<FileRecord>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public FileRecord next() {
+                return iterator.next().mFileRecord;
+            }
+        };
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    private void spill() throws IOException {
+        mBuffer.sort(ORDER);
+        writeRun(mBuffer.iterator());
+        mBuffer = new ArrayList<>();
+    }
+
+    private void writeRun(Iterator<Entry> iterator) throws IOException {
+        if (mDirectory == null) {
+            mDirectory = Files.createTempDirectory("filebydate-").toFile();
+        }
+
+        Run run = new Run(new File(mDirectory, String.format("run-%d", mRunCounter++)));
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run.mFile), BUFFER_SIZE))) {
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                FileRecord fileRecord = entry.mFileRecord;
+                String path = fileRecord.getFile().getPath();
+
+                output.writeInt(entry.mSource);
+                output.writeInt(path.length());
+                output.writeChars(path);
+                output.writeLong(fileRecord.getSize());
+                output.writeLong(fileRecord.getLastModified());
+                output.writeLong(fileRecord.getCreated());
+                run.mCount++;
+            }
+        }
+
+        mRuns.add(run);
+    }
+
+    private static class Entry {
+
+        private final FileRecord mFileRecord;
+        private final int mSource;
+
+        public Entry(int source, FileRecord fileRecord) {
+            mSource = source;
+            mFileRecord = fileRecord;
+        }
+    }
+
+    private static class MergeIterator implements Iterator<Entry> {
+
+        private final PriorityQueue<Head> mHeads = new PriorityQueue<>((o1, o2) -> ORDER.compare(o1.mEntry, o2.mEntry));
+
+        public MergeIterator(List<Iterator<Entry>> iterators) {
+            for (Iterator<Entry> iterator : iterators) {
+                if (iterator.hasNext()) {
+                    mHeads.add(new Head(iterator));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !mHeads.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            Head head = mHeads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+
+            Entry entry = head.mEntry;
+            if (head.mIterator.hasNext()) {
+                head.mEntry = head.mIterator.next();
+                mHeads.add(head);
+            }
+
+            return entry;
+        }
+
+        private static class Head {
+
+            private Entry mEntry;
+            private final Iterator<Entry> mIterator;
+
+            public Head(Iterator<Entry> iterator) {
+                mIterator = iterator;
+                mEntry = iterator.next();
+            }
+        }
+    }
+
+    private static class Run {
+
+        private int mCount;
+        private final File mFile;
+        private DataInputStream mInput;
+
+        public Run(File file) {
+            mFile = file;
+        }
+
+        /**
+         * The run file is deleted once it has been read to the end.
+         */
+        public Iterator<Entry> open() throws IOException {
+            mInput = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile), BUFFER_SIZE));
+            DataInputStream input = mInput;
+
+            return new Iterator<Entry>() {
+                private int mRemaining = mCount;
+
+                @Override
+                public boolean hasNext() {
+                    return mRemaining > 0;
+                }
+
+                @Override
+                public Entry next() {
+                    if (mRemaining == 0) {
+                        throw new NoSuchElementException();
+                    }
+
+                    try {
+                        int source = input.readInt();
+                        char[] path = new char[input.readInt()];
+                        for (int i = 0; i < path.length; i++) {
+                            path[i] = input.readChar();
+                        }
+                        FileRecord fileRecord = new FileRecord(new File(new String(path)), input.readLong(), input.readLong(), input.readLong());
+
+                        if (--mRemaining == 0) {
+                            delete();
+                        }
+
+                        return new Entry(source, fileRecord);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            };
+        }
+
+        private void delete() {
+            if (mInput != null) {
+                try {
+                    mInput.close();
+                } catch (IOException ex) {
+                    //nvm
+                }
+                mInput = null;
+            }
+
+            mFile.delete();
+        }
+    }
+}
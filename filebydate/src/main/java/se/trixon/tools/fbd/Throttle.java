@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limits on the bytes and the files per second of an
+ * {@link Operation}, both may be changed while it runs.
+ * <p>
+ * A bucket holds at most one second of tokens and callers may overdraw it.
+ * Nobody waits until the debt amounts to {@link #MIN_WAIT_MILLIS}, so small
+ * files are paced in slices rather than one sleep per file. Unlimited buckets
+ * cost a volatile read.
+ *
+ * @author Patrik Karlström
+ */
+public class Throttle {
+
+    public static final long MIN_WAIT_MILLIS = 20;
+
+    private final Bucket mBytes = new Bucket();
+    private final Bucket mFiles = new Bucket();
+
+    public Throttle() {
+    }
+
+    /**
+     * @param bytesPerSecond 0 for unlimited
+     * @param filesPerSecond 0 for unlimited
+     */
+    public Throttle(long bytesPerSecond, int filesPerSecond) {
+        setBytesPerSecond(bytesPerSecond);
+        setFilesPerSecond(filesPerSecond);
+    }
+
+    /**
+     * Takes count bytes, waiting if the bucket is too far overdrawn.
+     *
+     * @param count
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquireBytes(long count) throws InterruptedIOException {
+        mBytes.acquire(count);
+    }
+
+    /**
+     * Takes count file operations, waiting if the bucket is too far
+     * overdrawn.
+     *
+     * @param count
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquireFiles(int count) throws InterruptedIOException {
+        mFiles.acquire(count);
+    }
+
+    public long getBytesPerSecond() {
+        return mBytes.mRate;
+    }
+
+    public int getFilesPerSecond() {
+        return (int) mFiles.mRate;
+    }
+
+    public boolean isBytesLimited() {
+        return mBytes.mRate > 0;
+    }
+
+    /**
+     * Applies immediately, also to callers already waiting.
+     *
+     * @param bytesPerSecond 0 for unlimited
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        mBytes.setRate(bytesPerSecond);
+    }
+
+    /**
+     * Applies immediately, also to callers already waiting.
+     *
+     * @param filesPerSecond 0 for unlimited
+     */
+    public void setFilesPerSecond(int filesPerSecond) {
+        mFiles.setRate(filesPerSecond);
+    }
+
+    private static class Bucket {
+
+        private double mAvailable;
+        private long mLast = System.nanoTime();
+        private volatile long mRate;
+
+        void acquire(long count) throws InterruptedIOException {
+            if (mRate <= 0 || count <= 0) {
+                return;
+            }
+
+            synchronized (this) {
+                refill();
+                mAvailable -= count;
+
+                long waitNanos;
+                while ((waitNanos = getWaitNanos()) > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                    refill();
+                }
+            }
+        }
+
+        synchronized void setRate(long rate) {
+            refill();
+            mRate = Math.max(0, rate);
+            mAvailable = mRate == 0 ? 0 : Math.min(mAvailable, mRate);
+            notifyAll();
+        }
+
+        private long getWaitNanos() {
+            if (mRate <= 0 || mAvailable >= 0) {
+                return 0;
+            }
+
+            long waitNanos = (long) (-mAvailable * TimeUnit.SECONDS.toNanos(1) / mRate);
+            if (waitNanos < TimeUnit.MILLISECONDS.toNanos(MIN_WAIT_MILLIS)) {
+                return 0;
+            }
+
+            return waitNanos;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            if (mRate > 0) {
+                mAvailable = Math.min(mRate, mAvailable + (now - mLast) * mRate / (double) TimeUnit.SECONDS.toNanos(1));
+            }
+            mLast = now;
+        }
+    }
+}
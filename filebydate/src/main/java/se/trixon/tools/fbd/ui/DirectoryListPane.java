@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.fbd.ui;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
+import se.trixon.almond.util.Dict;
+
+/**
+ * An editable list of directories, used for the additional sources and
+ * destinations of a profile.
+ *
+ * @author Patrik Karlström
+ */
+class DirectoryListPane extends BorderPane {
+
+    private final Button mAddButton = new Button(Dict.ADD.toString());
+    private final ObservableList<File> mItems = FXCollections.observableArrayList();
+    private final ListView<File> mListView = new ListView<>(mItems);
+    private final Button mRemoveButton = new Button(Dict.REMOVE.toString());
+    private final String mTitle;
+
+    DirectoryListPane(String title) {
+        mTitle = title;
+        createUI();
+    }
+
+    List<File> getDirs() {
+        return new ArrayList<>(mItems);
+    }
+
+    void setDirs(List<File> dirs) {
+        mItems.setAll(dirs);
+    }
+
+    private void add() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle(mTitle);
+        File dir = directoryChooser.showDialog(getScene().getWindow());
+
+        if (dir != null && !mItems.contains(dir)) {
+            mItems.add(dir);
+        }
+    }
+
+    private void createUI() {
+        mListView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        mListView.setPrefHeight(72);
+        mRemoveButton.disableProperty().bind(mListView.getSelectionModel().selectedItemProperty().isNull());
+
+        mAddButton.setMaxWidth(Double.MAX_VALUE);
+        mRemoveButton.setMaxWidth(Double.MAX_VALUE);
+        mAddButton.setOnAction(event -> add());
+        mRemoveButton.setOnAction(event -> mItems.removeAll(new ArrayList<>(mListView.getSelectionModel().getSelectedItems())));
+
+        VBox buttonBox = new VBox(8, mAddButton, mRemoveButton);
+        BorderPane.setMargin(buttonBox, new Insets(0, 0, 0, 8));
+
+        setTop(new Label(mTitle));
+        setCenter(mListView);
+        setRight(buttonBox);
+    }
+}
@@ -18,6 +18,7 @@ package se.trixon.tools.fbd.ui;
 import com.dlsc.workbenchfx.Workbench;
 import com.dlsc.workbenchfx.model.WorkbenchModule;
 import com.dlsc.workbenchfx.view.controls.ToolbarItem;
+import java.util.ResourceBundle;
 import javafx.application.Platform;
 import javafx.collections.ObservableMap;
 import javafx.scene.Node;
@@ -26,17 +27,21 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyCombination;
 import se.trixon.almond.util.Dict;
+import se.trixon.almond.util.SystemHelper;
 import se.trixon.almond.util.icons.material.MaterialIcon;
 import se.trixon.toolbox.api.TbRunState;
 import static se.trixon.toolbox.api.TbToolbox.*;
 
 public class FbdModule extends WorkbenchModule {
 
+    private final ResourceBundle mBundle = SystemHelper.getBundle(FbdModule.class, "Bundle");
     private ToolbarItem mAddToolbarItem;
     private ToolbarItem mCancelToolbarItem;
     private boolean mFirstRun = true;
     private ToolbarItem mHomeToolbarItem;
     private ToolbarItem mLogToolbarItem;
+    private ToolbarItem mPauseToolbarItem;
+    private ToolbarItem mResumeToolbarItem;
     private ToolbarItem mRunToolbarItem;
     private FbdView mView;
 
@@ -87,6 +92,7 @@ public class FbdModule extends WorkbenchModule {
                             mHomeToolbarItem
                     );
                     getToolbarControlsRight().setAll(
+                            mPauseToolbarItem,
                             mCancelToolbarItem
                     );
                     mHomeToolbarItem.setDisable(true);
@@ -163,6 +169,24 @@ public class FbdModule extends WorkbenchModule {
         );
         mCancelToolbarItem.setTooltip(new Tooltip(Dict.CANCEL.toString()));
 
+        mPauseToolbarItem = new ToolbarItem(
+                MaterialIcon._Av.PAUSE.getImageView(ICON_SIZE_TOOLBAR),
+                event -> {
+                    mView.doPause();
+                    getToolbarControlsRight().set(0, mResumeToolbarItem);
+                }
+        );
+        mPauseToolbarItem.setTooltip(new Tooltip(mBundle.getString("pause")));
+
+        mResumeToolbarItem = new ToolbarItem(
+                MaterialIcon._Av.PLAY_ARROW.getImageView(ICON_SIZE_TOOLBAR),
+                event -> {
+                    mView.doResume();
+                    getToolbarControlsRight().set(0, mPauseToolbarItem);
+                }
+        );
+        mResumeToolbarItem.setTooltip(new Tooltip(mBundle.getString("resume")));
+
         getToolbarControlsRight().setAll(
                 mAddToolbarItem
         );
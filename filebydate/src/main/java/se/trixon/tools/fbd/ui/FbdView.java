@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -58,10 +59,13 @@ import se.trixon.almond.util.icons.material.MaterialIcon;
 import se.trixon.toolbox.api.TbNameCase;
 import se.trixon.toolbox.api.TbRunState;
 import static se.trixon.toolbox.api.TbToolbox.*;
+import se.trixon.tools.api.CancellationToken;
 import se.trixon.tools.fbd.Operation;
+import se.trixon.tools.fbd.BatchOperationListener;
 import se.trixon.tools.fbd.OperationListener;
 import se.trixon.tools.fbd.Profile;
 import se.trixon.tools.fbd.ProfileManager;
+import se.trixon.tools.fbd.Throttle;
 
 /**
  *
@@ -72,6 +76,7 @@ public class FbdView extends BorderPane {
     private static final Logger LOGGER = Logger.getLogger(FbdView.class.getName());
 
     private final ResourceBundle mBundle = SystemHelper.getBundle(FbdView.class, "Bundle");
+    private CancellationToken mCancellationToken = new CancellationToken();
     private Font mDefaultFont;
     private final ProfileIndicator mIndicator = new ProfileIndicator();
     private final ObservableList<Profile> mItems = FXCollections.observableArrayList();
@@ -96,6 +101,7 @@ public class FbdView extends BorderPane {
     }
 
     void doCancel() {
+        mCancellationToken.cancel();
         mOperationThread.interrupt();
     }
 
@@ -107,6 +113,14 @@ public class FbdView extends BorderPane {
         setCenter(mProgressPanel);
     }
 
+    void doPause() {
+        mCancellationToken.pause();
+    }
+
+    void doResume() {
+        mCancellationToken.resume();
+    }
+
     void doRun() {
         profileRun(mLastRunProfile);
     }
@@ -176,7 +190,7 @@ public class FbdView extends BorderPane {
     }
 
     private void initListeners() {
-        mOperationListener = new OperationListener() {
+        mOperationListener = new BatchOperationListener() {
             private boolean mSuccess;
 
             @Override
@@ -209,8 +223,8 @@ public class FbdView extends BorderPane {
             }
 
             @Override
-            public void onOperationLog(String message) {
-                mProgressPanel.out(message);
+            public void onOperationLog(List<String> messages) {
+                mProgressPanel.out(String.join("\n", messages));
             }
 
             @Override
@@ -292,8 +306,12 @@ public class FbdView extends BorderPane {
 
                 if (profile.isValid()) {
                     mLastRunProfile = profile;
+                    mCancellationToken = new CancellationToken();
+                    final CancellationToken cancellationToken = mCancellationToken;
+                    final Throttle throttle = new Throttle(profile.getBandwidthLimit(), profile.getFileRateLimit());
+                    mProgressPanel.setThrottle(throttle);
                     mOperationThread = new Thread(() -> {
-                        Operation operation = new Operation(mOperationListener, profile);
+                        Operation operation = new Operation(mOperationListener, profile, cancellationToken, throttle);
                         operation.start();
                     });
                     mOperationThread.setName("Operation");
@@ -78,16 +78,19 @@ public class PreviewPanel extends BorderPane {
         getCenter().setVisible(true);
 
         mOperation.setText(p.getCommand().toString());
-        mSource.setText(String.format("%s%s%s",
-                p.getSourceDirAsString(),
-                File.separator,
-                p.getFilePattern())
-        );
-        mDest.setText(String.format("%s%s%s\n",
-                p.getDestDirAsString(),
-                File.separator,
-                p.getDatePattern())
-        );
+        StringBuilder sources = new StringBuilder();
+        for (File sourceDir : p.getSourceDirs()) {
+            if (sources.length() > 0) {
+                sources.append("\n");
+            }
+            sources.append(String.format("%s%s%s", sourceDir, File.separator, p.getFilePattern()));
+        }
+        mSource.setText(sources.toString());
+        StringBuilder dests = new StringBuilder();
+        for (File destDir : p.getDestDirs()) {
+            dests.append(String.format("%s%s%s\n", destDir, File.separator, p.getDatePattern()));
+        }
+        mDest.setText(dests.toString());
         mBasedOn.setText(String.format("%s = '%s'\n",
                 Dict.DATE_SOURCE.toString(),
                 p.getDateSource().toString()
@@ -15,9 +15,9 @@
  */
 package se.trixon.tools.fbd.ui;
 
-import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.ZonedDateTime;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.ResourceBundle;
 import java.util.function.Predicate;
 import javafx.application.Platform;
@@ -29,11 +29,13 @@ import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.SelectionMode;
+import javafx.scene.control.Spinner;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Tooltip;
 import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.controlsfx.validation.ValidationResult;
 import org.controlsfx.validation.ValidationSupport;
@@ -45,6 +47,7 @@ import se.trixon.almond.util.fx.control.FileChooserPane.ObjectMode;
 import se.trixon.toolbox.api.TbDateSource;
 import se.trixon.toolbox.api.TbNameCase;
 import se.trixon.toolbox.api.TbPreferences;
+import se.trixon.tools.fbd.DateDirectoryResolver;
 import se.trixon.tools.fbd.Operation.Command;
 import se.trixon.tools.fbd.Profile;
 import se.trixon.tools.fbd.ProfileManager;
@@ -55,15 +58,22 @@ import se.trixon.tools.fbd.ProfileManager;
  */
 public class ProfilePanel extends GridPane {
 
+    private DirectoryListPane mAdditionalDestPane;
+    private DirectoryListPane mAdditionalSourcePane;
+    private Spinner<Integer> mBandwidthLimitSpinner;
     private final ResourceBundle mBundleUI = SystemHelper.getBundle(FbdModule.class, "Bundle");
     private ComboBox<TbNameCase> mCaseBaseComboBox;
     private ComboBox<TbNameCase> mCaseExtComboBox;
     private ComboBox<String> mDatePatternComboBox;
     private Label mDatePatternLabel;
     private ComboBox<TbDateSource> mDateSourceComboBox;
+    private CheckBox mDeduplicateCheckBox;
     private TextField mDescTextField;
     private FileChooserPane mDestChooserPane;
     private ComboBox<String> mFilePatternComboBox;
+    private Spinner<Integer> mFileRateLimitSpinner;
+    private CheckBox mIncrementalCheckBox;
+    private CheckBox mInodeOrderCheckBox;
     private CheckBox mLinksCheckBox;
     private TextField mNameTextField;
     private Button mOkButton;
@@ -74,6 +84,9 @@ public class ProfilePanel extends GridPane {
     private CheckBox mRecursiveCheckBox;
     private CheckBox mReplaceCheckBox;
     private FileChooserPane mSourceChooserPane;
+    private CheckBox mStreamingCheckBox;
+    private Spinner<Integer> mThreadsSpinner;
+    private CheckBox mVerifyCheckBox;
 
     public ProfilePanel(Profile p) {
         mProfile = p;
@@ -83,6 +96,8 @@ public class ProfilePanel extends GridPane {
         mDescTextField.setText(p.getDescription());
         mSourceChooserPane.setPath(p.getSourceDir());
         mDestChooserPane.setPath(p.getDestDir());
+        mAdditionalSourcePane.setDirs(p.getAdditionalSourceDirs());
+        mAdditionalDestPane.setDirs(p.getAdditionalDestDirs());
         mFilePatternComboBox.setValue(p.getFilePattern());
         mDateSourceComboBox.setValue(p.getDateSource());
         mDatePatternComboBox.setValue(p.getDatePattern());
@@ -90,8 +105,16 @@ public class ProfilePanel extends GridPane {
         mLinksCheckBox.setSelected(p.isFollowLinks());
         mRecursiveCheckBox.setSelected(p.isRecursive());
         mReplaceCheckBox.setSelected(p.isReplaceExisting());
+        mStreamingCheckBox.setSelected(p.isStreaming());
+        mDeduplicateCheckBox.setSelected(p.isDeduplicate());
+        mIncrementalCheckBox.setSelected(p.isIncremental());
+        mInodeOrderCheckBox.setSelected(p.isInodeOrder());
+        mVerifyCheckBox.setSelected(p.isVerify());
         mCaseBaseComboBox.setValue(p.getCaseBase());
         mCaseExtComboBox.setValue(p.getCaseExt());
+        mThreadsSpinner.getValueFactory().setValue(Math.max(1, p.getThreads()));
+        mBandwidthLimitSpinner.getValueFactory().setValue((int) Math.ceil(p.getBandwidthLimit() / (double) FileUtils.ONE_KB));
+        mFileRateLimitSpinner.getValueFactory().setValue(p.getFileRateLimit());
 
         initListeners();
 
@@ -106,6 +129,8 @@ public class ProfilePanel extends GridPane {
         mProfile.setDescription(mDescTextField.getText());
         mProfile.setSourceDir(mSourceChooserPane.getPath());
         mProfile.setDestDir(mDestChooserPane.getPath());
+        mProfile.setAdditionalSourceDirs(mAdditionalSourcePane.getDirs());
+        mProfile.setAdditionalDestDirs(mAdditionalDestPane.getDirs());
         mProfile.setFilePattern(mFilePatternComboBox.getValue());
         mProfile.setDateSource(mDateSourceComboBox.getValue());
         mProfile.setDatePattern(mDatePatternComboBox.getValue());
@@ -113,8 +138,16 @@ public class ProfilePanel extends GridPane {
         mProfile.setFollowLinks(mLinksCheckBox.isSelected());
         mProfile.setRecursive(mRecursiveCheckBox.isSelected());
         mProfile.setReplaceExisting(mReplaceCheckBox.isSelected());
+        mProfile.setStreaming(mStreamingCheckBox.isSelected());
+        mProfile.setDeduplicate(mDeduplicateCheckBox.isSelected());
+        mProfile.setIncremental(mIncrementalCheckBox.isSelected());
+        mProfile.setInodeOrder(mInodeOrderCheckBox.isSelected());
+        mProfile.setVerify(mVerifyCheckBox.isSelected());
         mProfile.setCaseBase(mCaseBaseComboBox.getValue());
         mProfile.setCaseExt(mCaseExtComboBox.getValue());
+        mProfile.setThreads(mThreadsSpinner.getValue());
+        mProfile.setBandwidthLimit(mBandwidthLimitSpinner.getValue() * FileUtils.ONE_KB);
+        mProfile.setFileRateLimit(mFileRateLimitSpinner.getValue());
     }
 
     void setOkButton(Button button) {
@@ -132,10 +165,23 @@ public class ProfilePanel extends GridPane {
         Label operationLabel = new Label(Dict.OPERATION.toString());
         Label caseBaseLabel = new Label(Dict.BASENAME.toString());
         Label caseExtLabel = new Label(Dict.EXTENSION.toString());
+        Label threadsLabel = new Label(mBundleUI.getString("threads"));
+        Label bandwidthLimitLabel = new Label(mBundleUI.getString("bandwidth_limit"));
+        Label fileRateLimitLabel = new Label(mBundleUI.getString("file_rate_limit"));
 
         mLinksCheckBox = new CheckBox(Dict.FOLLOW_LINKS.toString());
         mRecursiveCheckBox = new CheckBox(Dict.RECURSIVE.toString());
         mReplaceCheckBox = new CheckBox(Dict.REPLACE.toString());
+        mStreamingCheckBox = new CheckBox(mBundleUI.getString("streaming"));
+        mStreamingCheckBox.setTooltip(new Tooltip(mBundleUI.getString("streaming_tooltip")));
+        mDeduplicateCheckBox = new CheckBox(mBundleUI.getString("deduplicate"));
+        mDeduplicateCheckBox.setTooltip(new Tooltip(mBundleUI.getString("deduplicate_tooltip")));
+        mIncrementalCheckBox = new CheckBox(mBundleUI.getString("incremental"));
+        mIncrementalCheckBox.setTooltip(new Tooltip(mBundleUI.getString("incremental_tooltip")));
+        mInodeOrderCheckBox = new CheckBox(mBundleUI.getString("inode_order"));
+        mInodeOrderCheckBox.setTooltip(new Tooltip(mBundleUI.getString("inode_order_tooltip")));
+        mVerifyCheckBox = new CheckBox(mBundleUI.getString("verify"));
+        mVerifyCheckBox.setTooltip(new Tooltip(mBundleUI.getString("verify_tooltip")));
 
         mCaseBaseComboBox = new ComboBox<>();
         mDatePatternComboBox = new ComboBox<>();
@@ -144,11 +190,24 @@ public class ProfilePanel extends GridPane {
         mOperationComboBox = new ComboBox<>();
         mCaseExtComboBox = new ComboBox<>();
 
+        mThreadsSpinner = new Spinner<>(1, 64, 1);
+        mThreadsSpinner.setPrefWidth(80);
+        mBandwidthLimitSpinner = new Spinner<>(0, 100000000, 0, 1024);
+        mBandwidthLimitSpinner.setPrefWidth(80);
+        mBandwidthLimitSpinner.setEditable(true);
+        mBandwidthLimitSpinner.setTooltip(new Tooltip(mBundleUI.getString("bandwidth_limit_tooltip")));
+        mFileRateLimitSpinner = new Spinner<>(0, 100000, 0);
+        mFileRateLimitSpinner.setPrefWidth(80);
+        mFileRateLimitSpinner.setEditable(true);
+        mFileRateLimitSpinner.setTooltip(new Tooltip(mBundleUI.getString("file_rate_limit_tooltip")));
+
         mNameTextField = new TextField();
         mDescTextField = new TextField();
 
         mSourceChooserPane = new FileChooserPane(Dict.OPEN.toString(), Dict.SOURCE.toString(), ObjectMode.DIRECTORY, SelectionMode.SINGLE);
         mDestChooserPane = new FileChooserPane(Dict.OPEN.toString(), Dict.DESTINATION.toString(), ObjectMode.DIRECTORY, SelectionMode.SINGLE);
+        mAdditionalSourcePane = new DirectoryListPane(mBundleUI.getString("additional_sources"));
+        mAdditionalDestPane = new DirectoryListPane(mBundleUI.getString("additional_dests"));
 
         mFilePatternComboBox.setEditable(true);
         mDatePatternComboBox.setEditable(true);
@@ -164,6 +223,16 @@ public class ProfilePanel extends GridPane {
         add(mSourceChooserPane, col, ++row, REMAINING, 1);
         add(mDestChooserPane, col, ++row, REMAINING, 1);
 
+        GridPane additionalPane = new GridPane();
+        additionalPane.addRow(0, mAdditionalSourcePane, mAdditionalDestPane);
+        additionalPane.setHgap(8);
+        ColumnConstraints sourceCol = new ColumnConstraints();
+        sourceCol.setPercentWidth(50);
+        ColumnConstraints destCol = new ColumnConstraints();
+        destCol.setPercentWidth(50);
+        additionalPane.getColumnConstraints().addAll(sourceCol, destCol);
+        add(additionalPane, col, ++row, REMAINING, 1);
+
         GridPane patternPane = new GridPane();
         patternPane.addRow(0, filePatternLabel, dateSourceLabel, mDatePatternLabel);
         patternPane.addRow(1, mFilePatternComboBox, mDateSourceComboBox, mDatePatternComboBox);
@@ -192,18 +261,25 @@ public class ProfilePanel extends GridPane {
         mDatePatternComboBox.setMaxWidth(Double.MAX_VALUE);
         GridPane subPane = new GridPane();
         //subPane.setGridLinesVisible(true);
-        subPane.addRow(0, operationLabel, new Label(), new Label(), new Label(), caseBaseLabel, caseExtLabel);
-        subPane.addRow(1, mOperationComboBox, mLinksCheckBox, mRecursiveCheckBox, mReplaceCheckBox, mCaseBaseComboBox, mCaseExtComboBox);
+        subPane.addRow(0, operationLabel, new Label(), new Label(), new Label(), caseBaseLabel, caseExtLabel, threadsLabel, bandwidthLimitLabel, fileRateLimitLabel);
+        subPane.addRow(1, mOperationComboBox, mLinksCheckBox, mRecursiveCheckBox, mReplaceCheckBox, mCaseBaseComboBox, mCaseExtComboBox, mThreadsSpinner, mBandwidthLimitSpinner, mFileRateLimitSpinner);
         subPane.setHgap(8);
         add(subPane, col, ++row, REMAINING, 1);
 
+        GridPane optionsPane = new GridPane();
+        optionsPane.addRow(0, mStreamingCheckBox, mDeduplicateCheckBox, mIncrementalCheckBox, mInodeOrderCheckBox, mVerifyCheckBox);
+        optionsPane.setHgap(8);
+        add(optionsPane, col, ++row, REMAINING, 1);
+
         final Insets rowInsets = new Insets(0, 0, 8, 0);
 
         GridPane.setMargin(mNameTextField, rowInsets);
         GridPane.setMargin(mDescTextField, rowInsets);
         GridPane.setMargin(mSourceChooserPane, rowInsets);
         GridPane.setMargin(mDestChooserPane, rowInsets);
+        GridPane.setMargin(additionalPane, rowInsets);
         GridPane.setMargin(patternPane, rowInsets);
+        GridPane.setMargin(subPane, rowInsets);
 
         mFilePatternComboBox.setItems(FXCollections.observableArrayList(
                 "*",
@@ -222,7 +298,7 @@ public class ProfilePanel extends GridPane {
         mCaseBaseComboBox.setItems(FXCollections.observableArrayList(Arrays.asList(TbNameCase.values())));
         mCaseExtComboBox.setItems(FXCollections.observableArrayList(Arrays.asList(TbNameCase.values())));
         mDateSourceComboBox.setItems(FXCollections.observableArrayList(Arrays.asList(TbDateSource.values())));
-        mOperationComboBox.setItems(FXCollections.observableArrayList(Arrays.asList(Command.COPY, Command.MOVE)));
+        mOperationComboBox.setItems(FXCollections.observableArrayList(Arrays.asList(Command.values())));
     }
 
     private void initListeners() {
@@ -272,9 +348,8 @@ public class ProfilePanel extends GridPane {
         String datePreview;
 
         try {
-            SimpleDateFormat simpleDateFormat = new SimpleDateFormat(mDatePatternComboBox.getValue(), mTbPreferences.general().getLocale());
-            datePreview = simpleDateFormat.format(new Date(System.currentTimeMillis()));
-        } catch (IllegalArgumentException ex) {
+            datePreview = DateDirectoryResolver.createFormatter(mDatePatternComboBox.getValue(), mTbPreferences.general().getLocale()).format(ZonedDateTime.now());
+        } catch (IllegalArgumentException | DateTimeException ex) {
             datePreview = Dict.Dialog.ERROR.toString();
             validFormat = false;
         }
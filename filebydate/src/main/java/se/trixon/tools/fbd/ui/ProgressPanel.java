@@ -15,20 +15,27 @@
  */
 package se.trixon.tools.fbd.ui;
 
+import java.util.ResourceBundle;
 import javafx.application.Platform;
 import javafx.beans.value.ObservableValue;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
+import javafx.scene.control.Spinner;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
+import javafx.scene.control.Tooltip;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
+import org.apache.commons.io.FileUtils;
 import se.trixon.almond.util.Dict;
+import se.trixon.almond.util.SystemHelper;
 import se.trixon.almond.util.fx.control.LogPanel;
 import se.trixon.toolbox.api.TbGeneralPreferences;
 import se.trixon.toolbox.api.TbPreferences;
+import se.trixon.tools.fbd.Throttle;
 
 /**
  *
@@ -36,13 +43,17 @@ import se.trixon.toolbox.api.TbPreferences;
  */
 public class ProgressPanel extends BorderPane {
 
+    private final Spinner<Integer> mBandwidthLimitSpinner = new Spinner<>(0, 100000000, 0, 1024);
+    private final ResourceBundle mBundle = SystemHelper.getBundle(ProgressPanel.class, "Bundle");
     private final Tab mErrTab = new Tab(Dict.Dialog.ERROR.toString());
+    private final Spinner<Integer> mFileRateLimitSpinner = new Spinner<>(0, 100000, 0);
     private final TbGeneralPreferences mTbGeneralPreference = TbPreferences.getInstance().general();
     private final LogPanel mLogErrPanel = new LogPanel();
     private final LogPanel mLogOutPanel = new LogPanel();
     private final Tab mOutTab = new Tab(Dict.OUTPUT.toString());
     private final ProgressBar mProgressBar = new ProgressBar();
     private final TabPane mTabPane = new TabPane();
+    private Throttle mThrottle;
 
     public ProgressPanel() {
         mLogOutPanel.setMonospaced();
@@ -56,7 +67,17 @@ public class ProgressPanel extends BorderPane {
         Insets insets = new Insets(8);
         mProgressBar.setPadding(insets);
 
-        HBox box = new HBox(8, mProgressBar);
+        mBandwidthLimitSpinner.setPrefWidth(80);
+        mBandwidthLimitSpinner.setEditable(true);
+        mBandwidthLimitSpinner.setTooltip(new Tooltip(mBundle.getString("bandwidth_limit_tooltip")));
+        mFileRateLimitSpinner.setPrefWidth(80);
+        mFileRateLimitSpinner.setEditable(true);
+        mFileRateLimitSpinner.setTooltip(new Tooltip(mBundle.getString("file_rate_limit_tooltip")));
+
+        Label bandwidthLimitLabel = new Label(mBundle.getString("bandwidth_limit"));
+        Label fileRateLimitLabel = new Label(mBundle.getString("file_rate_limit"));
+
+        HBox box = new HBox(8, mProgressBar, bandwidthLimitLabel, mBandwidthLimitSpinner, fileRateLimitLabel, mFileRateLimitSpinner);
         HBox.setHgrow(mProgressBar, Priority.ALWAYS);
         mProgressBar.setMaxWidth(Double.MAX_VALUE);
         box.setAlignment(Pos.CENTER);
@@ -70,6 +91,18 @@ public class ProgressPanel extends BorderPane {
             mLogOutPanel.setWrapText(newWordWrap);
             mLogErrPanel.setWrapText(newWordWrap);
         });
+
+        mBandwidthLimitSpinner.valueProperty().addListener((ObservableValue<? extends Integer> ov, Integer t, Integer newLimit) -> {
+            if (mThrottle != null) {
+                mThrottle.setBytesPerSecond(newLimit * FileUtils.ONE_KB);
+            }
+        });
+
+        mFileRateLimitSpinner.valueProperty().addListener((ObservableValue<? extends Integer> ov, Integer t, Integer newLimit) -> {
+            if (mThrottle != null) {
+                mThrottle.setFilesPerSecond(newLimit);
+            }
+        });
     }
 
     void clear() {
@@ -91,4 +124,17 @@ public class ProgressPanel extends BorderPane {
         });
     }
 
+    /**
+     * Shows the limits of throttle and applies every change to them at once,
+     * also while the operation runs.
+     *
+     * @param throttle
+     */
+    void setThrottle(Throttle throttle) {
+        mThrottle = null;
+        mBandwidthLimitSpinner.getValueFactory().setValue((int) Math.ceil(throttle.getBytesPerSecond() / (double) FileUtils.ONE_KB));
+        mFileRateLimitSpinner.getValueFactory().setValue(throttle.getFilesPerSecond());
+        mThrottle = throttle;
+    }
+
 }
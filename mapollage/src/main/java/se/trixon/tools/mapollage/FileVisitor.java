@@ -29,9 +29,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.IOCase;
 import org.apache.commons.lang3.StringUtils;
+import se.trixon.tools.api.CancellationToken;
 import se.trixon.tools.mapollage.profile.ProfileDescription.DescriptionMode;
 
 /**
@@ -40,6 +40,7 @@ import se.trixon.tools.mapollage.profile.ProfileDescription.DescriptionMode;
  */
 public class FileVisitor extends SimpleFileVisitor<Path> {
 
+    private final CancellationToken mCancellationToken;
     private final Properties mDefaultDescProperties = new Properties();
     private final HashMap<String, Properties> mDirToDesc;
     private final String[] mExcludePatterns;
@@ -54,6 +55,7 @@ public class FileVisitor extends SimpleFileVisitor<Path> {
     public FileVisitor(PathMatcher pathMatcher, List<File> paths, File startDir, Operation operation) {
         mOperation = operation;
         mOperationListener = operation.getListener();
+        mCancellationToken = operation.getCancellationToken();
         mFiles = paths;
         mPathMatcher = pathMatcher;
         mExcludePatterns = StringUtils.split(operation.getExcludePattern(), "::");
@@ -80,6 +82,11 @@ public class FileVisitor extends SimpleFileVisitor<Path> {
 
     @Override
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        if (!mCancellationToken.proceed()) {
+            mInterrupted = true;
+            return FileVisitResult.TERMINATE;
+        }
+
         if (mExcludePatterns != null) {
             for (String excludePattern : mExcludePatterns) {
                 if (IOCase.SYSTEM.isCaseSensitive()) {
@@ -116,12 +123,11 @@ public class FileVisitor extends SimpleFileVisitor<Path> {
             }
 
             for (String fileName : filePaths) {
-                try {
-                    TimeUnit.NANOSECONDS.sleep(1);
-                } catch (InterruptedException ex) {
+                if (!mCancellationToken.proceed()) {
                     mInterrupted = true;
                     return FileVisitResult.TERMINATE;
                 }
+
                 File file = new File(dir.toFile(), fileName);
                 if (file.isFile() && mPathMatcher.matches(file.toPath().getFileName())) {
                     boolean exclude = false;
@@ -72,6 +72,7 @@ import se.trixon.almond.util.Scaler;
 import se.trixon.almond.util.SystemHelper;
 import se.trixon.almond.util.ext.GrahamScan;
 import se.trixon.toolbox.api.TbPreferences;
+import se.trixon.tools.api.CancellationToken;
 import se.trixon.tools.mapollage.profile.Profile;
 import se.trixon.tools.mapollage.profile.ProfileDescription;
 import se.trixon.tools.mapollage.profile.ProfileDescription.DescriptionSegment;
@@ -91,6 +92,7 @@ public class Operation implements Runnable {
 
     private final BalloonStyle mBalloonStyle;
     private final ResourceBundle mBundle;
+    private final CancellationToken mCancellationToken;
     private final DateFormat mDateFormatDate = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.MEDIUM);
     private final File mDestinationFile;
     private final HashMap<String, Properties> mDirToDesc = new HashMap<>();
@@ -128,8 +130,13 @@ public class Operation implements Runnable {
     private final SimpleDateFormat mTimeStampDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX");
 
     public Operation(OperationListener operationListener, Profile profile) {
+        this(operationListener, profile, new CancellationToken());
+    }
+
+    public Operation(OperationListener operationListener, Profile profile, CancellationToken cancellationToken) {
         mListener = operationListener;
         mProfile = profile;
+        mCancellationToken = cancellationToken;
         mProfileSource = mProfile.getSource();
         mProfileFolder = mProfile.getFolder();
         mProfilePath = mProfile.getPath();
@@ -209,7 +216,7 @@ public class Operation implements Runnable {
                     logError(String.format("E000 %s", file.getAbsolutePath()));
                 }
 
-                if (Thread.interrupted()) {
+                if (!mCancellationToken.proceed()) {
                     mInterrupted = true;
                     break;
                 }
@@ -237,6 +244,10 @@ public class Operation implements Runnable {
         }
     }
 
+    CancellationToken getCancellationToken() {
+        return mCancellationToken;
+    }
+
     HashMap<String, Properties> getDirToDesc() {
         return mDirToDesc;
     }
@@ -396,7 +407,7 @@ public class Operation implements Runnable {
                     mPhotoInfo.createThumbnail(thumbFile);
                 } else {
                     mListener.onOperationLog(String.format(mBundle.getString("insufficient_privileges"), mDestinationFile.getAbsolutePath()));
-                    Thread.currentThread().interrupt();
+                    mCancellationToken.cancel();
                     return;
                 }
             }
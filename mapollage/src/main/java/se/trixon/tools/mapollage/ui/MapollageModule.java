@@ -18,6 +18,7 @@ package se.trixon.tools.mapollage.ui;
 import com.dlsc.workbenchfx.Workbench;
 import com.dlsc.workbenchfx.model.WorkbenchModule;
 import com.dlsc.workbenchfx.view.controls.ToolbarItem;
+import java.util.ResourceBundle;
 import javafx.application.Platform;
 import javafx.collections.ObservableMap;
 import javafx.scene.Node;
@@ -26,6 +27,7 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyCombination;
 import se.trixon.almond.util.Dict;
+import se.trixon.almond.util.SystemHelper;
 import se.trixon.almond.util.icons.material.MaterialIcon;
 import se.trixon.toolbox.api.TbRunState;
 import static se.trixon.toolbox.api.TbToolbox.*;
@@ -33,11 +35,14 @@ import static se.trixon.toolbox.api.TbToolbox.*;
 public class MapollageModule extends WorkbenchModule {
 
     private ToolbarItem mAddToolbarItem;
+    private final ResourceBundle mBundle = SystemHelper.getBundle(MapollageModule.class, "Bundle");
     private ToolbarItem mCancelToolbarItem;
 
     private boolean mFirstRun = true;
     private ToolbarItem mHomeToolbarItem;
     private ToolbarItem mLogToolbarItem;
+    private ToolbarItem mPauseToolbarItem;
+    private ToolbarItem mResumeToolbarItem;
     private ToolbarItem mRunToolbarItem;
     private MapollageView mView;
 
@@ -94,6 +99,7 @@ public class MapollageModule extends WorkbenchModule {
                             mHomeToolbarItem
                     );
                     getToolbarControlsRight().setAll(
+                            mPauseToolbarItem,
                             mCancelToolbarItem
                     );
                     mHomeToolbarItem.setDisable(true);
@@ -170,6 +176,24 @@ public class MapollageModule extends WorkbenchModule {
         );
         mCancelToolbarItem.setTooltip(new Tooltip(Dict.CANCEL.toString()));
 
+        mPauseToolbarItem = new ToolbarItem(
+                MaterialIcon._Av.PAUSE.getImageView(ICON_SIZE_TOOLBAR),
+                event -> {
+                    mView.doPause();
+                    getToolbarControlsRight().set(0, mResumeToolbarItem);
+                }
+        );
+        mPauseToolbarItem.setTooltip(new Tooltip(mBundle.getString("pause")));
+
+        mResumeToolbarItem = new ToolbarItem(
+                MaterialIcon._Av.PLAY_ARROW.getImageView(ICON_SIZE_TOOLBAR),
+                event -> {
+                    mView.doResume();
+                    getToolbarControlsRight().set(0, mPauseToolbarItem);
+                }
+        );
+        mResumeToolbarItem.setTooltip(new Tooltip(mBundle.getString("resume")));
+
         getToolbarControlsRight().setAll(
                 mAddToolbarItem
         );
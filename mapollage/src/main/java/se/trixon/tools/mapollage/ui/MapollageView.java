@@ -63,6 +63,7 @@ import se.trixon.almond.util.icons.material.MaterialIcon;
 import se.trixon.toolbox.api.TbPreferences;
 import se.trixon.toolbox.api.TbRunState;
 import static se.trixon.toolbox.api.TbToolbox.*;
+import se.trixon.tools.api.CancellationToken;
 import se.trixon.tools.mapollage.MapollagePreferences;
 import se.trixon.tools.mapollage.Operation;
 import se.trixon.tools.mapollage.OperationListener;
@@ -78,6 +79,7 @@ public class MapollageView extends BorderPane {
     private static final Logger LOGGER = Logger.getLogger(MapollageView.class.getName());
 
     private final ResourceBundle mBundle = SystemHelper.getBundle(MapollageView.class, "Bundle");
+    private CancellationToken mCancellationToken = new CancellationToken();
     private Font mDefaultFont;
     private File mDestination;
     private final ProfileIndicator mIndicator = new ProfileIndicator();
@@ -104,6 +106,7 @@ public class MapollageView extends BorderPane {
     }
 
     void doCancel() {
+        mCancellationToken.cancel();
         mOperationThread.interrupt();
     }
 
@@ -115,6 +118,14 @@ public class MapollageView extends BorderPane {
         setCenter(mProgressPanel);
     }
 
+    void doPause() {
+        mCancellationToken.pause();
+    }
+
+    void doResume() {
+        mCancellationToken.resume();
+    }
+
     void doRun() {
         profileRun(mLastRunProfile);
     }
@@ -333,7 +344,8 @@ public class MapollageView extends BorderPane {
                 mIndicator.setProfile(profile);
                 mLastRunProfile = profile;
 
-                Operation operation = new Operation(mOperationListener, profile);
+                mCancellationToken = new CancellationToken();
+                Operation operation = new Operation(mOperationListener, profile, mCancellationToken);
                 mOperationThread = new Thread(operation);
                 mOperationThread.start();
             } else {
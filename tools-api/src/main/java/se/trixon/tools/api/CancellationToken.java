@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.tools.api;
+
+/**
+ * Cooperative cancel and pause/resume control for the operation of a tool.
+ * <p>
+ * Hot loops call {@link #proceed()}, which is a volatile read unless the
+ * operation is paused.
+ *
+ * @author Patrik Karlström
+ */
+public class CancellationToken {
+
+    private volatile boolean mCancelled;
+    private final Object mLock = new Object();
+    private volatile boolean mPaused;
+
+    public void cancel() {
+        mCancelled = true;
+        resume();
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public boolean isPaused() {
+        return mPaused;
+    }
+
+    public void pause() {
+        mPaused = true;
+    }
+
+    /**
+     * Blocks while paused.
+     *
+     * @return false if the operation has been cancelled
+     */
+    public boolean proceed() {
+        if (mPaused && !mCancelled) {
+            synchronized (mLock) {
+                while (mPaused && !mCancelled) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException ex) {
+                        mCancelled = true;
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        return !mCancelled;
+    }
+
+    public void resume() {
+        synchronized (mLock) {
+            mPaused = false;
+            mLock.notifyAll();
+        }
+    }
+}